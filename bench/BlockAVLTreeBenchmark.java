@@ -0,0 +1,162 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Compare lookup cost and memory footprint of BlockAVLTree against AVLTree and java.util.TreeSet.
+ * Keys are boxed up front and kept alive for the whole run, so the memory reported is the retained
+ * size of the structure alone. Larger sizes need a matching heap, e.g. -Xmx32g for 1e8 keys. Run
+ * with: java -Xmx8g BlockAVLTreeBenchmark [size...] [-b blockCapacity]
+ *
+ * @author Aaron Mussig (https://github.com/aaronmussig)
+ */
+public class BlockAVLTreeBenchmark {
+
+    private static final int LOOKUPS = 2000000;
+
+    public static void main(String[] args) {
+        int blockCapacity = 32;
+        List<Integer> sizes = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-b")) {
+                blockCapacity = Integer.parseInt(args[++i]);
+            } else {
+                sizes.add((int) Double.parseDouble(args[i]));
+            }
+        }
+        if (sizes.isEmpty()) {
+            sizes.add(1000000);
+        }
+
+        int capacity = blockCapacity;
+        System.out.printf("%-14s %12s %14s %14s %14s%n",
+                "structure", "keys", "insert (ns)", "lookup (ns)", "bytes/key");
+        for (int size : sizes) {
+            Integer[] keys = new Integer[size];
+            Random rng = new Random(size);
+            for (int i = 0; i < size; i++) {
+                keys[i] = rng.nextInt();
+            }
+            Integer[] probes = new Integer[LOOKUPS];
+            for (int i = 0; i < LOOKUPS; i++) {
+                probes[i] = (i % 2 == 0) ? keys[rng.nextInt(size)] : rng.nextInt();
+            }
+
+            measure("AVLTree", keys, probes, new Target() {
+                private AVLTree<Integer> tree = new AVLTree<>();
+
+                public void insert(Integer key) {
+                    tree.insert(key);
+                }
+
+                public boolean contains(Integer key) {
+                    return tree.contains(key);
+                }
+
+                public int size() {
+                    return tree.getSize();
+                }
+
+                public void clear() {
+                    tree = null;
+                }
+            });
+            measure("BlockAVLTree", keys, probes, new Target() {
+                private BlockAVLTree<Integer> tree = new BlockAVLTree<>(capacity);
+
+                public void insert(Integer key) {
+                    tree.insert(key);
+                }
+
+                public boolean contains(Integer key) {
+                    return tree.contains(key);
+                }
+
+                public int size() {
+                    return tree.getSize();
+                }
+
+                public void clear() {
+                    tree = null;
+                }
+            });
+            measure("TreeSet", keys, probes, new Target() {
+                private TreeSet<Integer> tree = new TreeSet<>();
+
+                public void insert(Integer key) {
+                    tree.add(key);
+                }
+
+                public boolean contains(Integer key) {
+                    return tree.contains(key);
+                }
+
+                public int size() {
+                    return tree.size();
+                }
+
+                public void clear() {
+                    tree = null;
+                }
+            });
+        }
+    }
+
+    /**
+     * Fill the structure, then time the lookups and measure the heap it retains.
+     */
+    private static void measure(String name, Integer[] keys, Integer[] probes, Target target) {
+        long begin = System.nanoTime();
+        for (Integer key : keys) {
+            target.insert(key);
+        }
+        double insertCost = (double) (System.nanoTime() - begin) / keys.length;
+
+        // Warm up, then time the lookups. The hit count keeps the loop from being optimised away.
+        int hits = 0;
+        for (int round = 0; round < 2; round++) {
+            hits = 0;
+            begin = System.nanoTime();
+            for (Integer probe : probes) {
+                if (target.contains(probe)) {
+                    hits++;
+                }
+            }
+        }
+        double lookupCost = (double) (System.nanoTime() - begin) / probes.length;
+
+        // The retained size is the drop in heap use once the structure is released.
+        int size = target.size();
+        long withStructure = usedMemory();
+        target.clear();
+        long retained = withStructure - usedMemory();
+
+        System.out.printf("%-14s %12d %14.1f %14.1f %14.1f%s%n", name, size, insertCost,
+                lookupCost, (double) retained / size, (hits == 0) ? " (no hits)" : "");
+    }
+
+    /**
+     * @return The bytes in use after encouraging a full collection.
+     */
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * The operations exercised by the benchmark.
+     */
+    private interface Target {
+        void insert(Integer key);
+
+        boolean contains(Integer key);
+
+        int size();
+
+        void clear();
+    }
+}
@@ -0,0 +1,128 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Compare the throughput and tail latency of a CombiningAVLTree against an AVLTree guarded by a
+ * synchronized block and by a ReentrantLock, at 1 to 128 threads. Every thread inserts uniformly
+ * random keys. Run with: java CombiningAVLTreeBenchmark [opsPerThread] [keySpace]
+ *
+ * @author Aaron Mussig (https://github.com/aaronmussig)
+ */
+public class CombiningAVLTreeBenchmark {
+
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32, 64, 128};
+
+    public static void main(String[] args) throws InterruptedException {
+        int opsPerThread = (args.length > 0) ? Integer.parseInt(args[0]) : 20000;
+        int keySpace = (args.length > 1) ? Integer.parseInt(args[1]) : 10000000;
+
+        System.out.printf("%-12s %8s %14s %10s %10s %10s%n",
+                "wrapper", "threads", "ops/s", "p50 (us)", "p99 (us)", "p99.9 (us)");
+        for (int threads : THREAD_COUNTS) {
+            AVLTree<Integer> monitorTree = new AVLTree<>();
+            report("synchronized", threads, run(threads, opsPerThread, keySpace, key -> {
+                synchronized (monitorTree) {
+                    monitorTree.insert(key);
+                }
+            }));
+
+            AVLTree<Integer> lockedTree = new AVLTree<>();
+            ReentrantLock lock = new ReentrantLock();
+            report("ReentrantLock", threads, run(threads, opsPerThread, keySpace, key -> {
+                lock.lock();
+                try {
+                    lockedTree.insert(key);
+                } finally {
+                    lock.unlock();
+                }
+            }));
+
+            CombiningAVLTree<Integer> combiningTree = new CombiningAVLTree<>();
+            report("combining", threads, run(threads, opsPerThread, keySpace, combiningTree::insert));
+        }
+    }
+
+    /**
+     * Print the throughput and latency percentiles of a run.
+     */
+    private static void report(String wrapper, int threads, Result result) {
+        long[] latencies = result.latencies;
+        Arrays.sort(latencies);
+        System.out.printf("%-12s %8d %14.0f %10.1f %10.1f %10.1f%n", wrapper, threads, result.throughput,
+                percentile(latencies, 0.5), percentile(latencies, 0.99), percentile(latencies, 0.999));
+    }
+
+    /**
+     * @return The latency at the given quantile of the sorted latencies, in microseconds.
+     */
+    private static double percentile(long[] sorted, double quantile) {
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e3;
+    }
+
+    /**
+     * Insert random keys on every thread, recording the latency of each operation.
+     *
+     * @return The throughput across all threads and the latency of every operation.
+     */
+    private static Result run(int threads, int opsPerThread, int keySpace, Inserter inserter)
+            throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        long[] latencies = new long[threads * opsPerThread];
+        for (int t = 0; t < threads; t++) {
+            Random rng = new Random(t);
+            int[] keys = new int[opsPerThread];
+            for (int i = 0; i < opsPerThread; i++) {
+                keys[i] = rng.nextInt(keySpace);
+            }
+            int offset = t * opsPerThread;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < keys.length; i++) {
+                    long begin = System.nanoTime();
+                    inserter.insert(keys[i]);
+                    latencies[offset + i] = System.nanoTime() - begin;
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+        return new Result((double) threads * opsPerThread / (elapsed / 1e9), latencies);
+    }
+
+    /**
+     * The operation exercised by the benchmark.
+     */
+    private interface Inserter {
+        void insert(int key);
+    }
+
+    /**
+     * The outcome of a single run.
+     */
+    private static class Result {
+        private final double throughput;
+        private final long[] latencies;
+
+        private Result(double throughput, long[] latencies) {
+            this.throughput = throughput;
+            this.latencies = latencies;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntFunction;
+
+/**
+ * Measure the cost of contains on AVLTree with and without its Bloom filter, over probe sets with a
+ * range of hit ratios, for Integer and String keys. Absent probes are drawn from the same key space
+ * as the stored keys, so a miss descends as deep as a hit would. Each configuration is timed after
+ * a warm up pass over the same probes. Run with: java FilterBenchmark [size] [falsePositiveRate]
+ *
+ * @author Aaron Mussig (https://github.com/aaronmussig)
+ */
+public class FilterBenchmark {
+
+    private static final int LOOKUPS = 2000000;
+    private static final double[] HIT_RATIOS = {0.0, 0.1, 0.5, 0.9, 1.0};
+
+    public static void main(String[] args) {
+        int size = (args.length > 0) ? (int) Double.parseDouble(args[0]) : 1000000;
+        double falsePositiveRate = (args.length > 1) ? Double.parseDouble(args[1]) : 0.01;
+
+        System.out.printf("%-8s %6s %14s %14s %10s %12s %14s%n",
+                "keys", "hits", "plain (ns)", "filter (ns)", "speedup", "false pos.", "filter B/key");
+        run("Integer", size, falsePositiveRate, i -> i);
+        run("String", size, falsePositiveRate, i -> String.format("key-%010d", i));
+    }
+
+    /**
+     * Insert the even values of the key space and probe with a mix of even (present) and odd
+     * (absent) values at each hit ratio.
+     *
+     * @param name              The key type, for the report.
+     * @param size              The number of keys to insert.
+     * @param falsePositiveRate The target rate of the filter.
+     * @param keyOf             Builds the key for a value.
+     */
+    private static <K extends Comparable<? super K>> void run(String name, int size, double falsePositiveRate,
+                                                              IntFunction<K> keyOf) {
+        Random rng = new Random(size);
+        List<K> keys = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            keys.add(keyOf.apply(2 * i));
+        }
+        Collections.shuffle(keys, rng);
+
+        AVLTree<K> plainTree = new AVLTree<>();
+        AVLTree<K> filteredTree = new AVLTree<>();
+        filteredTree.enableFilter(falsePositiveRate);
+        for (K key : keys) {
+            plainTree.insert(key);
+            filteredTree.insert(key);
+        }
+        long filterBytes = filteredTree.getFootprint().getStructureBytes()
+                - plainTree.getFootprint().getStructureBytes();
+
+        for (double hitRatio : HIT_RATIOS) {
+            List<K> probes = new ArrayList<>(LOOKUPS);
+            for (int i = 0; i < LOOKUPS; i++) {
+                int value = 2 * rng.nextInt(size);
+                probes.add(keyOf.apply((rng.nextDouble() < hitRatio) ? value : value + 1));
+            }
+
+            long plainHits = lookup(plainTree, probes);
+            double plainNanos = time(plainTree, probes);
+
+            FilterStats before = filteredTree.getFilterStats();
+            long filteredHits = lookup(filteredTree, probes);
+            FilterStats after = filteredTree.getFilterStats();
+            double filteredNanos = time(filteredTree, probes);
+            if (plainHits != filteredHits) {
+                throw new IllegalStateException("Filtered searches disagree with the tree");
+            }
+
+            long falsePositives = after.getFalsePositives() - before.getFalsePositives();
+            long misses = falsePositives + after.getRejections() - before.getRejections();
+            System.out.printf("%-8s %6.2f %14.1f %14.1f %9.2fx %12.4f %14.2f%n", name, hitRatio, plainNanos,
+                    filteredNanos, plainNanos / filteredNanos,
+                    (misses == 0) ? 0 : (double) falsePositives / misses, (double) filterBytes / size);
+        }
+    }
+
+    /**
+     * @return The mean nanoseconds per search over the probes.
+     */
+    private static <K extends Comparable<? super K>> double time(AVLTree<K> tree, List<K> probes) {
+        long start = System.nanoTime();
+        long hits = lookup(tree, probes);
+        long elapsed = System.nanoTime() - start;
+        if (hits < 0) {
+            System.out.println(hits);
+        }
+        return (double) elapsed / probes.size();
+    }
+
+    /**
+     * @return The number of probes found in the tree.
+     */
+    private static <K extends Comparable<? super K>> long lookup(AVLTree<K> tree, List<K> probes) {
+        long hits = 0;
+        for (K probe : probes) {
+            if (tree.contains(probe)) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,138 @@
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+
+/**
+ * Record the bytes per entry of every storage variant, both as estimated by the footprint API and
+ * as measured from the heap, for Integer and String keys. Run with:
+ * java -Xmx4g FootprintBenchmark [size...]
+ *
+ * @author Aaron Mussig (https://github.com/aaronmussig)
+ */
+public class FootprintBenchmark {
+
+    public static void main(String[] args) {
+        List<Integer> sizes = new ArrayList<>();
+        for (String arg : args) {
+            sizes.add((int) Double.parseDouble(arg));
+        }
+        if (sizes.isEmpty()) {
+            sizes.add(100000);
+            sizes.add(1000000);
+        }
+
+        AggregateAVLTree.Aggregator<Object, Integer> count = new AggregateAVLTree.Aggregator<Object, Integer>() {
+            @Override
+            public Integer identity() {
+                return 0;
+            }
+
+            @Override
+            public Integer lift(Object key) {
+                return 1;
+            }
+
+            @Override
+            public Integer combine(Integer left, Integer right) {
+                return left + right;
+            }
+        };
+
+        System.out.printf("%-18s %-8s %10s %10s %14s %14s %14s%n", "variant", "keys", "entries",
+                "height", "est. struct", "est. total", "measured");
+        for (int size : sizes) {
+            Random rng = new Random(size);
+            Integer[] integers = new Integer[size];
+            String[] strings = new String[size];
+            for (int i = 0; i < size; i++) {
+                integers[i] = rng.nextInt();
+                strings[i] = Long.toString(rng.nextLong() & Long.MAX_VALUE, 36);
+            }
+
+            run("AVLTree", integers, AVLTree::new);
+            run("AggregateAVLTree", integers, () -> new AggregateAVLTree<Integer, Integer>(count));
+            run("MerkleAVLTree", integers, MerkleAVLTree::new);
+            run("BlockAVLTree(16)", integers, () -> new BlockAVLTree<Integer>(16));
+            run("BlockAVLTree(64)", integers, () -> new BlockAVLTree<Integer>(64));
+            run("TreeSet", integers, null);
+
+            run("AVLTree", strings, AVLTree::new);
+            run("BlockAVLTree(32)", strings, () -> new BlockAVLTree<String>(32));
+            run("TreeSet", strings, null);
+        }
+    }
+
+    /**
+     * Build one variant from the keys and print its estimated and measured bytes per entry. The
+     * measured size is the drop in heap use once the structure is released, plus the estimated size
+     * of the keys, which stay alive throughout. A null supplier measures a TreeSet, which has no
+     * footprint API.
+     */
+    private static <K extends Comparable<? super K>> void run(String name, K[] keys, Supplier<Object> variant) {
+        Object structure = (variant == null) ? new TreeSet<K>() : variant.get();
+        Footprint footprint = fill(structure, keys);
+        int entries = (footprint == null) ? ((TreeSet<?>) structure).size() : footprint.getKeyCount();
+
+        long withStructure = usedMemory();
+        Reference.reachabilityFence(structure);
+        structure = null;
+        long retained = withStructure - usedMemory();
+
+        long keyBytes = 0;
+        for (K key : keys) {
+            keyBytes += Footprint.estimateKeyBytes(key);
+        }
+
+        String keyType = keys[0].getClass().getSimpleName();
+        if (footprint == null) {
+            System.out.printf("%-18s %-8s %10d %10s %14s %14s %14.1f%n", name, keyType, entries, "-", "-", "-",
+                    (double) (retained + keyBytes) / entries);
+        } else {
+            System.out.printf("%-18s %-8s %10d %10d %14.1f %14.1f %14.1f%n", name, keyType, entries,
+                    footprint.getHeight(), (double) footprint.getStructureBytes() / entries,
+                    footprint.getBytesPerEntry(), (double) (retained + keyBytes) / entries);
+        }
+    }
+
+    /**
+     * Insert every key into the structure.
+     *
+     * @return The footprint reported by the structure, or null for a TreeSet.
+     */
+    @SuppressWarnings("unchecked")
+    private static <K extends Comparable<? super K>> Footprint fill(Object structure, K[] keys) {
+        if (structure instanceof AVLTree) {
+            AVLTree<K> tree = (AVLTree<K>) structure;
+            for (K key : keys) {
+                tree.insert(key);
+            }
+            return tree.getFootprint();
+        }
+        if (structure instanceof BlockAVLTree) {
+            BlockAVLTree<K> tree = (BlockAVLTree<K>) structure;
+            for (K key : keys) {
+                tree.insert(key);
+            }
+            return tree.getFootprint();
+        }
+        TreeSet<K> tree = (TreeSet<K>) structure;
+        for (K key : keys) {
+            tree.add(key);
+        }
+        return null;
+    }
+
+    /**
+     * @return The bytes in use after encouraging a full collection.
+     */
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,106 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Compare the write throughput of a ShardedAVLTree against a single AVLTree guarded by one global
+ * lock. Each thread inserts and searches uniformly random keys. Run with:
+ * java ShardedAVLTreeBenchmark [opsPerThread] [keySpace]
+ *
+ * @author Aaron Mussig (https://github.com/aaronmussig)
+ */
+public class ShardedAVLTreeBenchmark {
+
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32};
+
+    public static void main(String[] args) throws InterruptedException {
+        int opsPerThread = (args.length > 0) ? Integer.parseInt(args[0]) : 200000;
+        int keySpace = (args.length > 1) ? Integer.parseInt(args[1]) : 10000000;
+
+        System.out.printf("%8s %20s %20s%n", "threads", "global lock (ops/s)", "sharded (ops/s)");
+        for (int threads : THREAD_COUNTS) {
+            AVLTree<Integer> single = new AVLTree<>();
+            double globalRate = run(threads, opsPerThread, keySpace, new Target() {
+                @Override
+                public void insert(int key) {
+                    synchronized (single) {
+                        single.insert(key);
+                    }
+                }
+
+                @Override
+                public boolean contains(int key) {
+                    synchronized (single) {
+                        return single.contains(key);
+                    }
+                }
+            });
+
+            ShardedAVLTree<Integer> sharded = new ShardedAVLTree<>();
+            double shardedRate = run(threads, opsPerThread, keySpace, new Target() {
+                @Override
+                public void insert(int key) {
+                    sharded.insert(key);
+                }
+
+                @Override
+                public boolean contains(int key) {
+                    return sharded.contains(key);
+                }
+            });
+            System.out.printf("%8d %20.0f %20.0f%n", threads, globalRate, shardedRate);
+        }
+    }
+
+    /**
+     * Run a mix of three inserts to one search on every thread and time the slowest thread.
+     *
+     * @return The number of operations per second across all threads.
+     */
+    private static double run(int threads, int opsPerThread, int keySpace, Target target)
+            throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Random rng = new Random(t);
+            int[] keys = new int[opsPerThread];
+            for (int i = 0; i < opsPerThread; i++) {
+                keys[i] = rng.nextInt(keySpace);
+            }
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < keys.length; i++) {
+                    if ((i & 3) == 3) {
+                        target.contains(keys[i - 1]);
+                    } else {
+                        target.insert(keys[i]);
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+        return (double) threads * opsPerThread / (elapsed / 1e9);
+    }
+
+    /**
+     * The operations exercised by the benchmark.
+     */
+    private interface Target {
+        void insert(int key);
+
+        boolean contains(int key);
+    }
+}
@@ -0,0 +1,285 @@
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+
+/**
+ * Replay a recorded operation trace deterministically against each tree implementation and report
+ * throughput, latency percentiles and allocation per operation. The trace is decoded into memory
+ * first, so decoding is not timed, and each implementation replays it from empty on a single
+ * thread. Timing every operation adds the cost of two System.nanoTime calls to each one.
+ *
+ * Replay a trace:      java TraceReplayBenchmark trace.bin [int|long|string] [runs]
+ * Record a synthetic:  java TraceReplayBenchmark --record trace.bin [operations]
+ *
+ * @author Aaron Mussig (https://github.com/aaronmussig)
+ */
+public class TraceReplayBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: TraceReplayBenchmark trace.bin [int|long|string] [runs]");
+            System.err.println("       TraceReplayBenchmark --record trace.bin [operations]");
+            return;
+        }
+        if (args[0].equals("--record")) {
+            recordSynthetic(args[1], (args.length > 2) ? (int) Double.parseDouble(args[2]) : 1000000);
+            return;
+        }
+        String keyType = (args.length > 1) ? args[1] : "int";
+        int runs = (args.length > 2) ? Integer.parseInt(args[2]) : 3;
+        if (keyType.equals("long")) {
+            replayAll(args[0], KeyCodec.longs(), runs);
+        } else if (keyType.equals("string")) {
+            replayAll(args[0], KeyCodec.strings(), runs);
+        } else {
+            replayAll(args[0], KeyCodec.integers(), runs);
+        }
+    }
+
+    /**
+     * Record a miss-heavy mix of inserts, searches and occasional traversals and truncations through
+     * an AVLTree with a recorder attached.
+     */
+    private static void recordSynthetic(String path, int operations) throws IOException {
+        AVLTree<Integer> avlTree = new AVLTree<>();
+        Random rng = new Random(1);
+        try (TraceRecorder<Integer> recorder = new TraceRecorder<>(new FileOutputStream(path), KeyCodec.integers())) {
+            avlTree.setTraceRecorder(recorder);
+            for (int i = 0; i < operations; i++) {
+                int choice = rng.nextInt(1000);
+                if (choice < 300) {
+                    avlTree.insert(rng.nextInt(10000000));
+                } else if (choice < 998) {
+                    avlTree.contains(rng.nextInt(10000000));
+                } else if (choice < 999) {
+                    avlTree.headTruncate(rng.nextInt(100000));
+                } else if (i % 100 == 0) {
+                    avlTree.getInorderNodes();
+                }
+            }
+            avlTree.setTraceRecorder(null);
+            System.out.println("Recorded " + recorder.getOperationCount() + " operations to " + path);
+        }
+    }
+
+    /**
+     * Decode the trace and replay it against every implementation which supports its operations.
+     */
+    private static <K extends Comparable<? super K>> void replayAll(String path, KeyCodec<K> codec, int runs)
+            throws IOException {
+        Trace<K> trace = load(path, codec);
+        System.out.printf("%d operations, %s removals%n", trace.size, trace.hasRemovals ? "with" : "without");
+        System.out.printf("%-14s %14s %10s %10s %10s %10s %14s%n",
+                "structure", "ops/s", "p50 (ns)", "p99 (ns)", "p99.9 (ns)", "max (ns)", "alloc (B/op)");
+
+        replay("AVLTree", trace, runs, () -> new Target<K>() {
+            private final AVLTree<K> tree = new AVLTree<>();
+
+            public void insert(K key) {
+                tree.insert(key);
+            }
+
+            public boolean contains(K key) {
+                return tree.contains(key);
+            }
+
+            public int traverse() {
+                return tree.getInorderNodes().size();
+            }
+
+            public void removeRange(K from, K to) {
+                tree.removeRange(from, to);
+            }
+
+            public void headTruncate(K key) {
+                tree.headTruncate(key);
+            }
+
+            public void tailTruncate(K key) {
+                tree.tailTruncate(key);
+            }
+        });
+        replay("BlockAVLTree", trace, runs, () -> new Target<K>() {
+            private final BlockAVLTree<K> tree = new BlockAVLTree<>();
+
+            public void insert(K key) {
+                tree.insert(key);
+            }
+
+            public boolean contains(K key) {
+                return tree.contains(key);
+            }
+
+            public int traverse() {
+                return tree.getInorderNodes().size();
+            }
+
+            public void removeRange(K from, K to) {
+                tree.removeRange(from, to);
+            }
+
+            public void headTruncate(K key) {
+                tree.headTruncate(key);
+            }
+
+            public void tailTruncate(K key) {
+                tree.tailTruncate(key);
+            }
+        });
+        replay("TreeSet", trace, runs, () -> new Target<K>() {
+            private final TreeSet<K> tree = new TreeSet<>();
+
+            public void insert(K key) {
+                tree.add(key);
+            }
+
+            public boolean contains(K key) {
+                return tree.contains(key);
+            }
+
+            public int traverse() {
+                return new ArrayList<>(tree).size();
+            }
+
+            public void removeRange(K from, K to) {
+                if (from.compareTo(to) < 0) {
+                    tree.subSet(from, to).clear();
+                }
+            }
+
+            public void headTruncate(K key) {
+                tree.headSet(key).clear();
+            }
+
+            public void tailTruncate(K key) {
+                tree.tailSet(key).clear();
+            }
+        });
+    }
+
+    /**
+     * Replay the trace several times against fresh instances, reporting the last run so the earlier
+     * ones serve as warm up.
+     */
+    private static <K> void replay(String name, Trace<K> trace, int runs, Supplier<Target<K>> factory) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long[] latencies = new long[trace.size];
+        double throughput = 0;
+        long allocated = 0;
+        long checksum = 0;
+
+        for (int run = 0; run < runs; run++) {
+            Target<K> target = factory.get();
+            long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+            long begin = System.nanoTime();
+            for (int i = 0; i < trace.size; i++) {
+                long start = System.nanoTime();
+                checksum += apply(target, trace.operations[i], trace.keys.get(i), trace.secondKeys.get(i));
+                latencies[i] = System.nanoTime() - start;
+            }
+            long elapsed = System.nanoTime() - begin;
+            allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+            throughput = trace.size / (elapsed / 1e9);
+        }
+
+        Arrays.sort(latencies);
+        System.out.printf("%-14s %14.0f %10d %10d %10d %10d %14.1f%s%n", name, throughput,
+                percentile(latencies, 0.5), percentile(latencies, 0.99), percentile(latencies, 0.999),
+                latencies[latencies.length - 1], (double) allocated / trace.size,
+                (checksum == Long.MIN_VALUE) ? "!" : "");
+    }
+
+    /**
+     * @return A value derived from the result, so the operation cannot be optimised away.
+     */
+    private static <K> long apply(Target<K> target, byte operation, K key, K secondKey) {
+        switch (operation) {
+            case TraceRecorder.INSERT:
+                target.insert(key);
+                return 0;
+            case TraceRecorder.CONTAINS:
+                return target.contains(key) ? 1 : 0;
+            case TraceRecorder.TRAVERSE:
+                return target.traverse();
+            case TraceRecorder.REMOVE_RANGE:
+                target.removeRange(key, secondKey);
+                return 0;
+            case TraceRecorder.HEAD_TRUNCATE:
+                target.headTruncate(key);
+                return 0;
+            case TraceRecorder.TAIL_TRUNCATE:
+                target.tailTruncate(key);
+                return 0;
+            default:
+                throw new IllegalArgumentException("Unknown operation " + operation);
+        }
+    }
+
+    /**
+     * @return The latency at the given quantile of the sorted latencies.
+     */
+    private static long percentile(long[] sorted, double quantile) {
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1);
+        return sorted[Math.max(0, index)];
+    }
+
+    /**
+     * Decode every operation of a trace into memory.
+     */
+    private static <K> Trace<K> load(String path, KeyCodec<K> codec) throws IOException {
+        Trace<K> trace = new Trace<>();
+        byte[] operations = new byte[1024];
+        try (TraceReader<K> reader = new TraceReader<>(new BufferedInputStream(new FileInputStream(path)), codec)) {
+            while (reader.next()) {
+                if (trace.size == operations.length) {
+                    operations = Arrays.copyOf(operations, operations.length * 2);
+                }
+                byte operation = reader.getOperation();
+                operations[trace.size++] = operation;
+                trace.keys.add(reader.getKey());
+                trace.secondKeys.add(reader.getSecondKey());
+                trace.hasRemovals |= operation >= TraceRecorder.REMOVE_RANGE;
+            }
+        }
+        trace.operations = operations;
+        return trace;
+    }
+
+    /**
+     * A decoded trace.
+     */
+    private static class Trace<K> {
+        private byte[] operations;
+        private final List<K> keys = new ArrayList<>();
+        private final List<K> secondKeys = new ArrayList<>();
+        private int size;
+        private boolean hasRemovals;
+    }
+
+    /**
+     * The operations a trace can contain, which every replayed implementation supports.
+     */
+    private interface Target<K> {
+        void insert(K key);
+
+        boolean contains(K key);
+
+        int traverse();
+
+        void removeRange(K from, K to);
+
+        void headTruncate(K key);
+
+        void tailTruncate(K key);
+    }
+}
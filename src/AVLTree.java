@@ -1,5 +1,7 @@
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.function.ToLongFunction;
 
 /**
  * Create an AVL tree to store a key value. Duplicates keys are ignored. Space complexity: O(n),
@@ -12,6 +14,12 @@ public class AVLTree<K extends Comparable<? super K>> {
 
     AVLNode root;    // The root of the tree.
     int size;        // The number of nodes in the tree.
+    long keyBytes;   // The estimated bytes retained by the keys.
+    private long minKeyBytes;                     // The smallest key size seen since the keys were last sized.
+    private long maxKeyBytes;                     // The largest key size seen since the keys were last sized.
+    private ToLongFunction<? super K> keySizer;   // Estimates the bytes retained by a key.
+    private TraceRecorder<? super K> recorder;    // Records every operation, when set.
+    private BloomFilter<K> filter;                // Rejects searches for absent keys, when enabled.
 
     /**
      * Instantiate a new AVL Tree.
@@ -19,6 +27,8 @@ public class AVLTree<K extends Comparable<? super K>> {
      */
     public AVLTree() {
         this.size = 0;
+        this.keySizer = Footprint::estimateKeyBytes;
+        resetKeyBytes();
     }
 
     /**
@@ -29,6 +39,156 @@ public class AVLTree<K extends Comparable<? super K>> {
         return this.size;
     }
 
+    /**
+     * Estimate the heap retained by the tree, including the search filter when it is enabled. The
+     * totals are maintained as keys are added and removed, so the tree is not walked. Time
+     * complexity: O(1), as a constant number of variables are accessed.
+     *
+     * @return The node count, height and estimated bytes of the structure and the keys.
+     */
+    public Footprint getFootprint() {
+        int height = (this.root == null) ? 0 : this.root.getHeight();
+        long structureBytes = this.size * nodeBytes() + ((this.filter == null) ? 0 : this.filter.getBytes());
+        return new Footprint(this.size, this.size, height, structureBytes, this.keyBytes);
+    }
+
+    /**
+     * Replace the function used to estimate the bytes retained by each key, for keys which are not
+     * boxed primitives or Strings. The keys already in the tree are sized again.
+     * Time complexity: O(n), where n is the number of nodes in the tree.
+     *
+     * @param keySizer Estimates the bytes retained by a key.
+     */
+    public void setKeySizer(ToLongFunction<? super K> keySizer) {
+        this.keySizer = keySizer;
+        resetKeyBytes();
+        for (K key : sortedKeys()) {
+            addKeyBytes(key);
+        }
+    }
+
+    /**
+     * Forget the size of every key, before they are all sized again. Time complexity: O(1).
+     */
+    private void resetKeyBytes() {
+        this.keyBytes = 0;
+        this.minKeyBytes = Long.MAX_VALUE;
+        this.maxKeyBytes = Long.MIN_VALUE;
+    }
+
+    /**
+     * Account for a key added to the tree, tracking whether every key so far has the same size.
+     * Time complexity: O(1) plus the cost of the key sizer.
+     *
+     * @param key The key which was added.
+     */
+    private void addKeyBytes(K key) {
+        long bytes = this.keySizer.applyAsLong(key);
+        this.keyBytes += bytes;
+        this.minKeyBytes = Math.min(this.minKeyBytes, bytes);
+        this.maxKeyBytes = Math.max(this.maxKeyBytes, bytes);
+    }
+
+    /**
+     * Record every following insert, search, traversal and removal to a trace, or stop recording.
+     * The recorder is not flushed or closed by the tree. Time complexity: O(1), as only a single
+     * variable is accessed.
+     *
+     * @param recorder The recorder to write operations to, or null to stop recording.
+     */
+    public void setTraceRecorder(TraceRecorder<? super K> recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Place a Bloom filter in front of contains which hashes keys from their content with KeyHash,
+     * so only boxed primitive and String keys are supported. Time complexity: O(n), where n is the
+     * number of nodes in the tree.
+     *
+     * @param falsePositiveRate The fraction of absent keys the filter may let through, in (0, 1).
+     */
+    public void enableFilter(double falsePositiveRate) {
+        enableFilter(falsePositiveRate, KeyHash::of);
+    }
+
+    /**
+     * Place a Bloom filter in front of contains, so most searches for absent keys return without
+     * descending the tree. The filter is updated by insert, doubled whenever the tree outgrows it
+     * and rebuilt once more than half of its keys have been removed from the tree. The key hash
+     * must agree with compareTo: keys which compare as equal must hash the same, or contains may
+     * report a key which is present as absent. Time complexity: O(n), where n is the number of nodes
+     * in the tree, as the filter is filled from the keys already present.
+     *
+     * @param falsePositiveRate The fraction of absent keys the filter may let through, in (0, 1).
+     * @param keyHash           Hashes a single key consistently with compareTo.
+     */
+    public void enableFilter(double falsePositiveRate, ToLongFunction<? super K> keyHash) {
+        // The filter is only put in place once every key has been hashed into it.
+        BloomFilter<K> newFilter = new BloomFilter<>(2 * this.size, falsePositiveRate, keyHash);
+        fillFilter(newFilter, this.root);
+        this.filter = newFilter;
+    }
+
+    /**
+     * Remove the filter, so every search descends the tree. Time complexity: O(1), as only a single
+     * variable is accessed.
+     */
+    public void disableFilter() {
+        this.filter = null;
+    }
+
+    /**
+     * Time complexity: O(1), as a constant number of variables are accessed.
+     *
+     * @return The size of the filter and how often it rejected or wrongly passed a search, or null
+     * if the filter is not enabled.
+     */
+    public FilterStats getFilterStats() {
+        return (this.filter == null) ? null : this.filter.getStats();
+    }
+
+    /**
+     * Rebuild the filter if the tree has outgrown it, or if most of its keys have been removed and
+     * only add to its false positives. The new filter is sized for twice the current keys, so the
+     * rebuilds during growth cost O(1) amortised per insert. Time complexity: O(1), or O(n) when the
+     * filter is rebuilt.
+     */
+    private void checkFilter() {
+        if (this.filter != null
+                && (this.size > this.filter.getCapacity() || this.filter.getEntries() > 2 * this.size)) {
+            this.filter.reset(2 * this.size);
+            fillFilter(this.filter, this.root);
+        }
+    }
+
+    /**
+     * Add every key of a subtree to a filter. Time complexity: O(k), where k is the number of
+     * nodes in the subtree.
+     *
+     * @param bloomFilter The filter to add the keys to.
+     * @param rootNode    The node to start traversal from.
+     */
+    private void fillFilter(BloomFilter<K> bloomFilter, AVLNode rootNode) {
+        if (rootNode != null) {
+            fillFilter(bloomFilter, rootNode.getLeft());
+            bloomFilter.add(rootNode.getKey());
+            fillFilter(bloomFilter, rootNode.getRight());
+        }
+    }
+
+    /**
+     * The estimated size of one node: an object header, the height and subtree key count, the three
+     * node references, the key reference and the reference to the enclosing tree held by every
+     * inner class instance. The count fills what would otherwise be alignment padding.
+     * Subclasses which store additional data in each node override this.
+     * Time complexity: O(1).
+     *
+     * @return The estimated bytes of a single node, excluding its key.
+     */
+    long nodeBytes() {
+        return Footprint.objectBytes(4 + 4 + 5 * Footprint.REFERENCE);
+    }
+
     /**
      * Time complexity: O(n), where n is the number of nodes in the tree.
      *
@@ -69,6 +229,9 @@ public class AVLTree<K extends Comparable<? super K>> {
      * @return A list of all in-order nodes.
      */
     public List<K> getInorderNodes() {
+        if (this.recorder != null) {
+            this.recorder.recordTraversal();
+        }
         return traverseInorder(this.root);
     }
 
@@ -102,6 +265,115 @@ public class AVLTree<K extends Comparable<? super K>> {
         return userList;
     }
 
+    /**
+     * Time complexity: O(n), where n is the number of nodes in the tree.
+     *
+     * @return A random access list of all in-order keys, without recording a traversal.
+     */
+    List<K> sortedKeys() {
+        List<K> userList = new ArrayList<>(this.size);
+        appendInorder(this.root, userList);
+        return userList;
+    }
+
+    /**
+     * The helper function to sortedKeys. Time complexity: O(k), where k is the number of nodes in
+     * the subtree.
+     *
+     * @param rootNode The node to start traversal from.
+     * @param userList The list to append the keys to.
+     */
+    private void appendInorder(AVLNode rootNode, List<K> userList) {
+        if (rootNode != null) {
+            appendInorder(rootNode.getLeft(), userList);
+            userList.add(rootNode.getKey());
+            appendInorder(rootNode.getRight(), userList);
+        }
+    }
+
+    /**
+     * Replace the contents of the tree with keys which are already sorted. The middle key of each
+     * range becomes the root of its subtree, so the tree is built balanced without any comparisons
+     * or rotations. Time complexity: O(m), where m is the number of keys.
+     *
+     * @param keys Strictly increasing keys in a random access list.
+     */
+    void buildSorted(List<K> keys) {
+        setRoot(buildRange(keys, 0, keys.size()));
+        this.size = keys.size();
+        resetKeyBytes();
+        for (K key : keys) {
+            addKeyBytes(key);
+        }
+        if (this.filter != null) {
+            this.filter.reset(2 * this.size);
+            fillFilter(this.filter, this.root);
+        }
+    }
+
+    /**
+     * The helper function to buildSorted. Time complexity: O(k), where k = to - from.
+     *
+     * @param keys The sorted keys.
+     * @param from The first key of the range (inclusive).
+     * @param to   The end of the range (exclusive).
+     * @return The root of a balanced subtree holding the keys of the range.
+     */
+    private AVLNode buildRange(List<K> keys, int from, int to) {
+        if (from >= to) {
+            return null;
+        }
+        int middle = (from + to) >>> 1;
+        AVLNode node = createNode(keys.get(middle));
+        link(node, buildRange(keys, from, middle), buildRange(keys, middle + 1, to));
+        return node;
+    }
+
+    /**
+     * Time complexity: O(log(n) + k), where n is the number of nodes in the tree and k is the
+     * number of keys in the range.
+     *
+     * @param from The lowest key to include (inclusive).
+     * @param to   The key to stop at (exclusive).
+     * @return A list of all in-order nodes with keys in the range [from, to).
+     */
+    public List<K> getRangeNodes(K from, K to) {
+        List<K> userList = new ArrayList<>();
+        traverseRange(this.root, from, to, userList);
+        return userList;
+    }
+
+    /**
+     * The helper function to getRangeNodes. Only subtrees which may overlap the range are visited.
+     * Time complexity: O(log(n) + k), where n is the number of nodes in the tree and k is the
+     * number of keys in the range.
+     *
+     * @param rootNode The node to start traversal from.
+     * @param from     The lowest key to include (inclusive).
+     * @param to       The key to stop at (exclusive).
+     * @param userList The list to append the keys to.
+     */
+    private void traverseRange(AVLNode rootNode, K from, K to, List<K> userList) {
+        if (rootNode == null) {
+            return;
+        }
+        boolean aboveFrom = from.compareTo(rootNode.getKey()) <= 0;
+        boolean belowTo = to.compareTo(rootNode.getKey()) > 0;
+
+        // Keys in the left subtree can only be in range if this key is not below the range.
+        if (aboveFrom) {
+            traverseRange(rootNode.getLeft(), from, to, userList);
+        }
+        if (aboveFrom && belowTo) {
+            userList.add(rootNode.getKey());
+        }
+
+        // Keys in the right subtree can only be in range if this key is not above the range.
+        if (belowTo) {
+            traverseRange(rootNode.getRight(), from, to, userList);
+        }
+    }
+
     /**
      * Time complexity: O(n), where n is the number of nodes in the tree.
      *
@@ -144,9 +416,14 @@ public class AVLTree<K extends Comparable<? super K>> {
      * @param key The key to insert.
      */
     public void insert(K key) {
+        // Hash the key for the filter first, so a key it cannot hash leaves the tree unchanged.
+        long filterHash = (this.filter == null) ? 0 : this.filter.hash(key);
+        if (this.recorder != null) {
+            this.recorder.recordInsert(key);
+        }
 
         // Create a new node.
-        AVLNode newNode = new AVLNode(key);
+        AVLNode newNode = createNode(key);
 
         // Set this as the root node if the tree hasn't been instantiated.
         if (this.root == null) {
@@ -181,17 +458,28 @@ public class AVLTree<K extends Comparable<? super K>> {
         // Re-calculate the heights of the subtrees and balance.
         balanceTree(newNode);
         this.size++;
+        addKeyBytes(key);
+        if (this.filter != null) {
+            this.filter.addHash(filterHash);
+            checkFilter();
+        }
     }
 
     /**
      * Searches the tree and returns the value associated with this key. Time complexity: O(log(n))
      * where n is the number of nodes in the tree, as the tree is a complete and balanced binary
-     * search tree.
+     * search tree. With the filter enabled, most absent keys are rejected after a few bit reads.
      *
      * @param key The key to search for.
      * @return True if the key is found, false otherwise.
      */
     public boolean contains(K key) {
+        if (this.recorder != null) {
+            this.recorder.recordContains(key);
+        }
+        if (this.filter != null && !this.filter.mightContain(key)) {
+            return false;                                // The key was never inserted.
+        }
         AVLNode currentNode = this.root;
 
         // Traverse through the tree in breadth first search order.
@@ -205,9 +493,74 @@ public class AVLTree<K extends Comparable<? super K>> {
             }
         }
         // Element was not found in the tree.
+        if (this.filter != null) {
+            this.filter.recordFalsePositive();
+        }
         return false;
     }
 
+    /**
+     * Remove every key in the range [from, to). The tree is split along the search paths for both
+     * bounds and the outer pieces are joined back together using their heights. The number of keys
+     * removed is read from the subtree counts. Time complexity: O(log(n)) where n is the number of
+     * nodes in the tree, plus O(k) for the k removed keys only when keys differ in size and their
+     * bytes must be subtracted one by one.
+     *
+     * @param from The lowest key to remove (inclusive).
+     * @param to   The key to stop removing at (exclusive).
+     * @return The number of keys removed.
+     */
+    public int removeRange(K from, K to) {
+        if (this.recorder != null) {
+            this.recorder.recordRemoveRange(from, to);
+        }
+        if (this.root == null || from.compareTo(to) >= 0) {
+            return 0;
+        }
+        NodePair lower = split(this.root, from);
+        NodePair upper = split(lower.right, to);
+        setRoot(join(lower.left, upper.right));
+        int removed = discard(upper.left);
+        checkFilter();
+        return removed;
+    }
+
+    /**
+     * Remove every key less than the given key. Time complexity: O(log(n)) where n is the number of
+     * nodes in the tree, plus O(k) for the k removed keys when keys differ in size.
+     *
+     * @param key The lowest key to keep.
+     * @return The number of keys removed.
+     */
+    public int headTruncate(K key) {
+        if (this.recorder != null) {
+            this.recorder.recordHeadTruncate(key);
+        }
+        NodePair pieces = split(this.root, key);
+        setRoot(pieces.right);
+        int removed = discard(pieces.left);
+        checkFilter();
+        return removed;
+    }
+
+    /**
+     * Remove every key greater than or equal to the given key. Time complexity: O(log(n)) where n is
+     * the number of nodes in the tree, plus O(k) for the k removed keys when keys differ in size.
+     *
+     * @param key The lowest key to remove.
+     * @return The number of keys removed.
+     */
+    public int tailTruncate(K key) {
+        if (this.recorder != null) {
+            this.recorder.recordTailTruncate(key);
+        }
+        NodePair pieces = split(this.root, key);
+        setRoot(pieces.left);
+        int removed = discard(pieces.right);
+        checkFilter();
+        return removed;
+    }
+
     /**
      * Recurse up the tree from the leaf node and update height balance. Time complexity: O(log(n))
      * where n is the number of nodes in the tree, as the tree is a complete and balanced binary
@@ -339,6 +692,17 @@ public class AVLTree<K extends Comparable<? super K>> {
         }
     }
 
+    /**
+     * Create the node which will store a new key. Subclasses override this to store additional data
+     * in each node. Time complexity: O(1), as a constant number of references are accessed.
+     *
+     * @param key The key of the new node.
+     * @return The new node.
+     */
+    AVLNode createNode(K key) {
+        return new AVLNode(key);
+    }
+
     /**
      * Given a key value, find the insertion point which would be the direct parent of the new Node.
      * Time complexity: O(log(n)) where n is the number of nodes in the tree, as the tree is a
@@ -374,6 +738,274 @@ public class AVLTree<K extends Comparable<? super K>> {
         return previousNode;
     }
 
+    /**
+     * Make a detached subtree the whole tree. Time complexity: O(1), as a constant number of
+     * references are accessed.
+     *
+     * @param newRoot The new root, or null for an empty tree.
+     */
+    private void setRoot(AVLNode newRoot) {
+        if (newRoot != null) {
+            newRoot.setParent(null);
+        }
+        this.root = newRoot;
+    }
+
+    /**
+     * Account for the keys of a subtree which has been cut from the tree. The number of keys is
+     * read from the subtree root, and while every key has had the same size their bytes follow from
+     * it too; only keys of differing sizes, such as Strings, are visited to be sized. The nodes
+     * themselves are left to the garbage collector. Time complexity: O(1), or O(k) for keys of
+     * differing sizes, where k is the number of nodes in the subtree.
+     *
+     * @param rootNode The root of the removed subtree.
+     * @return The number of keys removed.
+     */
+    private int discard(AVLNode rootNode) {
+        int removed = countOf(rootNode);
+        this.size -= removed;
+        if (this.minKeyBytes == this.maxKeyBytes) {
+            this.keyBytes -= removed * this.minKeyBytes;
+        } else {
+            this.keyBytes -= sumKeyBytes(rootNode);
+        }
+        return removed;
+    }
+
+    /**
+     * Time complexity: O(k), where k is the number of nodes in the subtree.
+     *
+     * @param rootNode The root of a subtree, or null.
+     * @return The estimated bytes retained by the keys of the subtree.
+     */
+    private long sumKeyBytes(AVLNode rootNode) {
+        if (rootNode == null) {
+            return 0;
+        }
+        return sumKeyBytes(rootNode.getLeft()) + this.keySizer.applyAsLong(rootNode.getKey())
+                + sumKeyBytes(rootNode.getRight());
+    }
+
+    /**
+     * Split a subtree into the keys below a bound and the keys at or above it. Every node on the
+     * search path is re-joined with the subtree on its far side. Time complexity: O(log(n)) where n
+     * is the number of nodes in the subtree, as the joins along the path telescope.
+     *
+     * @param rootNode The subtree to split.
+     * @param key      The lowest key of the upper piece.
+     * @return The lower piece as left and the upper piece as right.
+     */
+    private NodePair split(AVLNode rootNode, K key) {
+        if (rootNode == null) {
+            return new NodePair(null, null);
+        }
+        AVLNode leftChild = rootNode.getLeft();
+        AVLNode rightChild = rootNode.getRight();
+
+        // This node belongs to the upper piece, along with its right subtree.
+        if (key.compareTo(rootNode.getKey()) <= 0) {
+            NodePair pieces = split(leftChild, key);
+            return new NodePair(pieces.left, join(pieces.right, rootNode, rightChild));
+        }
+
+        // This node belongs to the lower piece, along with its left subtree.
+        NodePair pieces = split(rightChild, key);
+        return new NodePair(join(leftChild, rootNode, pieces.left), pieces.right);
+    }
+
+    /**
+     * Join two subtrees where every key in the left is less than every key in the right. The
+     * smallest node of the right subtree becomes the pivot. Time complexity: O(log(n)).
+     *
+     * @param left  The subtree holding the lower keys.
+     * @param right The subtree holding the higher keys.
+     * @return The root of the joined subtree.
+     */
+    private AVLNode join(AVLNode left, AVLNode right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        NodePair pieces = removeFirst(right);
+        return join(left, pieces.left, pieces.right);
+    }
+
+    /**
+     * Detach the smallest node of a subtree. Time complexity: O(log(n)).
+     *
+     * @param rootNode The subtree to remove the smallest node from.
+     * @return The smallest node as left and the remaining subtree as right.
+     */
+    private NodePair removeFirst(AVLNode rootNode) {
+        if (rootNode.getLeft() == null) {
+            return new NodePair(rootNode, rootNode.getRight());
+        }
+        NodePair pieces = removeFirst(rootNode.getLeft());
+        return new NodePair(pieces.left, join(pieces.right, rootNode, rootNode.getRight()));
+    }
+
+    /**
+     * Join two subtrees around a pivot node, where the keys of the left subtree are less than the
+     * pivot and the keys of the right subtree are greater. The shorter subtree is attached down the
+     * spine of the taller one at the point where the heights meet. Time complexity:
+     * O(|h(left) - h(right)| + 1), where h is the height of a subtree.
+     *
+     * @param left  The subtree holding the lower keys.
+     * @param pivot The node to place between them.
+     * @param right The subtree holding the higher keys.
+     * @return The root of the joined subtree.
+     */
+    private AVLNode join(AVLNode left, AVLNode pivot, AVLNode right) {
+        if (heightOf(left) > heightOf(right) + 1) {
+            return joinRight(left, pivot, right);
+        }
+        if (heightOf(right) > heightOf(left) + 1) {
+            return joinLeft(left, pivot, right);
+        }
+        link(pivot, left, right);
+        return pivot;
+    }
+
+    /**
+     * Join where the left subtree is the taller, descending its right spine.
+     * Time complexity: O(h(left) - h(right)).
+     *
+     * @param left  The taller subtree holding the lower keys.
+     * @param pivot The node to place between them.
+     * @param right The subtree holding the higher keys.
+     * @return The root of the joined subtree.
+     */
+    private AVLNode joinRight(AVLNode left, AVLNode pivot, AVLNode right) {
+        AVLNode outer = left.getLeft();
+        AVLNode inner = left.getRight();
+        if (heightOf(inner) <= heightOf(right) + 1) {
+            link(pivot, inner, right);
+            if (pivot.getHeight() <= heightOf(outer) + 1) {
+                link(left, outer, pivot);
+                return left;
+            }
+            link(left, outer, rotateRight(pivot));
+            return rotateLeft(left);
+        }
+        AVLNode joined = joinRight(inner, pivot, right);
+        link(left, outer, joined);
+        return (joined.getHeight() <= heightOf(outer) + 1) ? left : rotateLeft(left);
+    }
+
+    /**
+     * Join where the right subtree is the taller, descending its left spine.
+     * Time complexity: O(h(right) - h(left)).
+     *
+     * @param left  The subtree holding the lower keys.
+     * @param pivot The node to place between them.
+     * @param right The taller subtree holding the higher keys.
+     * @return The root of the joined subtree.
+     */
+    private AVLNode joinLeft(AVLNode left, AVLNode pivot, AVLNode right) {
+        AVLNode outer = right.getRight();
+        AVLNode inner = right.getLeft();
+        if (heightOf(inner) <= heightOf(left) + 1) {
+            link(pivot, left, inner);
+            if (pivot.getHeight() <= heightOf(outer) + 1) {
+                link(right, pivot, outer);
+                return right;
+            }
+            link(right, rotateLeft(pivot), outer);
+            return rotateRight(right);
+        }
+        AVLNode joined = joinLeft(left, pivot, inner);
+        link(right, joined, outer);
+        return (joined.getHeight() <= heightOf(outer) + 1) ? right : rotateRight(right);
+    }
+
+    /**
+     * Time complexity: O(1), as a constant number of references are accessed.
+     *
+     * @param node The root of the subtree to rotate.
+     * @return The new root of the subtree, which was the right child.
+     */
+    private AVLNode rotateLeft(AVLNode node) {
+        AVLNode rightChild = node.getRight();
+        link(node, node.getLeft(), rightChild.getLeft());
+        link(rightChild, node, rightChild.getRight());
+        return rightChild;
+    }
+
+    /**
+     * Time complexity: O(1), as a constant number of references are accessed.
+     *
+     * @param node The root of the subtree to rotate.
+     * @return The new root of the subtree, which was the left child.
+     */
+    private AVLNode rotateRight(AVLNode node) {
+        AVLNode leftChild = node.getLeft();
+        link(node, leftChild.getRight(), node.getRight());
+        link(leftChild, leftChild.getLeft(), node);
+        return leftChild;
+    }
+
+    /**
+     * Attach two subtrees to a node and update its height.
+     * Time complexity: O(1), as a constant number of references are accessed.
+     *
+     * @param node  The new parent.
+     * @param left  The new left subtree.
+     * @param right The new right subtree.
+     */
+    private void link(AVLNode node, AVLNode left, AVLNode right) {
+        node.setLeft(left);
+        node.setRight(right);
+        if (left != null) {
+            left.setParent(node);
+        }
+        if (right != null) {
+            right.setParent(node);
+        }
+        node.updateHeight();
+    }
+
+    /**
+     * Time complexity: O(1), as a constant number of references are accessed.
+     *
+     * @param node The root of a subtree, or null.
+     * @return The height of the subtree.
+     */
+    private int heightOf(AVLNode node) {
+        return (node == null) ? 0 : node.getHeight();
+    }
+
+    /**
+     * Time complexity: O(1), as a constant number of references are accessed.
+     *
+     * @param node The root of a subtree, or null.
+     * @return The number of keys in the subtree.
+     */
+    int countOf(AVLNode node) {
+        return (node == null) ? 0 : node.getCount();
+    }
+
+    /**
+     * Two subtrees produced by splitting the tree. Space complexity: O(1).
+     */
+    private class NodePair {
+
+        private final AVLNode left;     // The lower piece.
+        private final AVLNode right;    // The upper piece.
+
+        /**
+         * Time complexity: O(1), as a constant number of references are accessed.
+         *
+         * @param left  The lower piece.
+         * @param right The upper piece.
+         */
+        private NodePair(AVLNode left, AVLNode right) {
+            this.left = left;
+            this.right = right;
+        }
+    }
+
     /**
      * A Node in the Tree which contains the key/value pair. Space complexity: O(1) as a constant
      * number of pointers are stored.
@@ -383,6 +1015,7 @@ public class AVLTree<K extends Comparable<? super K>> {
     class AVLNode implements Comparable<AVLNode> {
 
         private int height;                     // Height of this node.
+        private int count;                      // The number of keys in the subtree of this node.
         private AVLNode left, right, parent;    // Left and right children.
         private K key;                          // The key of this Node.
 
@@ -392,8 +1025,9 @@ public class AVLTree<K extends Comparable<? super K>> {
          *
          * @param key The key of this node.
          */
-        private AVLNode(K key) {
+        AVLNode(K key) {
             this.key = key;
+            this.count = 1;
             this.left = null;
             this.right = null;
             this.parent = null;
@@ -429,12 +1063,24 @@ public class AVLTree<K extends Comparable<? super K>> {
         /**
          * Time complexity: O(1), as a constant number of references are accessed.
          *
-         * Update the height of this node.
+         * Update the height and subtree key count of this node. This is called whenever the
+         * children of this node may have changed, so subclasses override it to maintain additional
+         * subtree data.
          */
-        private void updateHeight() {
+        void updateHeight() {
             int leftHeight = getLeftHeight();
             int rightHeight = getRightHeight();
             this.height = Math.max(leftHeight, rightHeight) + 1;
+            this.count = 1 + countOf(this.left) + countOf(this.right);
+        }
+
+        /**
+         * Time complexity: O(1), as a constant number of references are accessed.
+         *
+         * @return The number of keys in the subtree of this node.
+         */
+        int getCount() {
+            return this.count;
         }
 
         /**
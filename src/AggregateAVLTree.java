@@ -0,0 +1,224 @@
+/**
+ * An AVL tree where every node also stores a summary of its subtree, such as the sum, minimum or
+ * count of a value derived from the keys. The summaries are combined with a user supplied
+ * associative operation and are recalculated whenever a node's height is, so they stay correct
+ * through insertion and rebalancing. A range can then be summarised by combining O(log(n)) node
+ * summaries rather than visiting every key. Space complexity: O(n), where n is the number of nodes
+ * in the tree.
+ *
+ * @param <K> The key value to store in the tree. Must have the Comparable interface implemented.
+ * @param <A> The type of the subtree summary.
+ * @author Aaron Mussig (https://github.com/aaronmussig)
+ */
+public class AggregateAVLTree<K extends Comparable<? super K>, A> extends AVLTree<K> {
+
+    private final Aggregator<? super K, A> aggregator;  // Builds and combines the summaries.
+
+    /**
+     * Instantiate a new AVL Tree which maintains subtree summaries.
+     * Time complexity: O(1), as only a single variable is accessed.
+     *
+     * @param aggregator Builds and combines the summaries.
+     */
+    public AggregateAVLTree(Aggregator<? super K, A> aggregator) {
+        super();
+        this.aggregator = aggregator;
+    }
+
+    /**
+     * Time complexity: O(1), as only the root summary is accessed.
+     *
+     * @return The summary of every key in the tree.
+     */
+    public A aggregate() {
+        return summaryOf(this.root);
+    }
+
+    /**
+     * Summarise the keys in the range [from, to). Time complexity: O(log(n)) where n is the number of
+     * nodes in the tree, as at most two root-to-leaf paths are followed and the subtrees hanging off
+     * them are used as a whole.
+     *
+     * @param from The lowest key to include (inclusive).
+     * @param to   The key to stop at (exclusive).
+     * @return The summary of the keys in the range, or the identity if the range is empty.
+     */
+    public A aggregate(K from, K to) {
+        if (from.compareTo(to) >= 0) {
+            return this.aggregator.identity();
+        }
+        return aggregateRange(this.root, from, to);
+    }
+
+    /**
+     * Find the node where the search paths for the two bounds diverge, then summarise each side
+     * against a single bound. Time complexity: O(log(n)).
+     *
+     * @param rootNode The node to start searching from.
+     * @param from     The lowest key to include (inclusive).
+     * @param to       The key to stop at (exclusive).
+     * @return The summary of the keys in the range.
+     */
+    private A aggregateRange(AVLNode rootNode, K from, K to) {
+        AVLNode currentNode = rootNode;
+        while (currentNode != null) {
+            if (currentNode.getKey().compareTo(from) < 0) {
+                currentNode = currentNode.getRight();   // The whole range is to the right.
+            } else if (currentNode.getKey().compareTo(to) >= 0) {
+                currentNode = currentNode.getLeft();    // The whole range is to the left.
+            } else {
+                A left = aggregateFrom(currentNode.getLeft(), from);
+                A right = aggregateBelow(currentNode.getRight(), to);
+                return this.aggregator.combine(
+                        this.aggregator.combine(left, this.aggregator.lift(currentNode.getKey())), right);
+            }
+        }
+        return this.aggregator.identity();
+    }
+
+    /**
+     * Summarise the keys of a subtree which are not below the bound. Every right subtree passed on
+     * the way down is entirely in range, so its stored summary is used. Time complexity: O(log(n)).
+     *
+     * @param rootNode The subtree to summarise.
+     * @param from     The lowest key to include (inclusive).
+     * @return The summary of the keys greater than or equal to the bound.
+     */
+    private A aggregateFrom(AVLNode rootNode, K from) {
+        A result = this.aggregator.identity();
+        AVLNode currentNode = rootNode;
+        while (currentNode != null) {
+            if (currentNode.getKey().compareTo(from) >= 0) {
+                // This key and its right subtree precede everything summarised so far.
+                A inRange = this.aggregator.combine(
+                        this.aggregator.lift(currentNode.getKey()), summaryOf(currentNode.getRight()));
+                result = this.aggregator.combine(inRange, result);
+                currentNode = currentNode.getLeft();
+            } else {
+                currentNode = currentNode.getRight();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Summarise the keys of a subtree which are below the bound. Every left subtree passed on the
+     * way down is entirely in range, so its stored summary is used. Time complexity: O(log(n)).
+     *
+     * @param rootNode The subtree to summarise.
+     * @param to       The key to stop at (exclusive).
+     * @return The summary of the keys less than the bound.
+     */
+    private A aggregateBelow(AVLNode rootNode, K to) {
+        A result = this.aggregator.identity();
+        AVLNode currentNode = rootNode;
+        while (currentNode != null) {
+            if (currentNode.getKey().compareTo(to) < 0) {
+                // This key and its left subtree follow everything summarised so far.
+                A inRange = this.aggregator.combine(
+                        summaryOf(currentNode.getLeft()), this.aggregator.lift(currentNode.getKey()));
+                result = this.aggregator.combine(result, inRange);
+                currentNode = currentNode.getRight();
+            } else {
+                currentNode = currentNode.getLeft();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Time complexity: O(1), as a constant number of references are accessed.
+     *
+     * @param node The root of the subtree, or null.
+     * @return The summary stored at the node, or the identity for an empty subtree.
+     */
+    @SuppressWarnings("unchecked")
+    private A summaryOf(AVLNode node) {
+        return (node == null) ? this.aggregator.identity() : ((AggregateNode) node).summary;
+    }
+
+    /**
+     * The estimated size of one node, which also holds a reference to its summary and its own
+     * reference to the enclosing tree. The summary objects themselves are not counted, as they may
+     * be shared or of any size. Time complexity: O(1).
+     *
+     * @return The estimated bytes of a single node, excluding its key and summary.
+     */
+    @Override
+    long nodeBytes() {
+        return Footprint.objectBytes(4 + 4 + 7 * Footprint.REFERENCE);
+    }
+
+    /**
+     * Time complexity: O(1), as a constant number of references are accessed.
+     *
+     * @param key The key of the new node.
+     * @return A node which stores its subtree summary.
+     */
+    @Override
+    AVLNode createNode(K key) {
+        return new AggregateNode(key);
+    }
+
+    /**
+     * Builds and combines subtree summaries. The combine operation must be associative and the
+     * identity must leave any summary unchanged when combined with it on either side, but the
+     * operation need not be commutative: summaries are always combined in key order.
+     *
+     * @param <K> The type of the keys.
+     * @param <A> The type of the summary.
+     */
+    public interface Aggregator<K, A> {
+
+        /**
+         * @return The summary of an empty set of keys.
+         */
+        A identity();
+
+        /**
+         * @param key The key to summarise.
+         * @return The summary of a single key.
+         */
+        A lift(K key);
+
+        /**
+         * @param left  The summary of the lower keys.
+         * @param right The summary of the higher keys.
+         * @return The summary of both sets of keys.
+         */
+        A combine(A left, A right);
+    }
+
+    /**
+     * A node which also stores the summary of its subtree. Space complexity: O(1) in addition to the
+     * summary itself.
+     */
+    private class AggregateNode extends AVLNode {
+
+        private A summary;  // The summary of the subtree rooted at this node.
+
+        /**
+         * Time complexity: O(1), as a constant number of references are accessed.
+         *
+         * @param key The key of this node.
+         */
+        private AggregateNode(K key) {
+            super(key);
+            this.summary = AggregateAVLTree.this.aggregator.lift(key);
+        }
+
+        /**
+         * Update the height and the summary of this node from its children. Time complexity: O(1),
+         * as a constant number of references are accessed.
+         */
+        @Override
+        void updateHeight() {
+            super.updateHeight();
+            Aggregator<? super K, A> aggregator = AggregateAVLTree.this.aggregator;
+            A leftSummary = summaryOf(getLeft());
+            A rightSummary = summaryOf(getRight());
+            this.summary = aggregator.combine(aggregator.combine(leftSummary, aggregator.lift(getKey())),
+                    rightSummary);
+        }
+    }
+}
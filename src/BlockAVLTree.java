@@ -0,0 +1,1158 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * Create an AVL tree where every node stores a sorted block of keys rather than a single key.
+ * Lookups binary search the block once the search reaches the node whose key range covers the key,
+ * so a tree of n keys has roughly n / b nodes for a block capacity of b. This cuts the number of
+ * node references followed per lookup and the per-key object overhead. Full blocks are split in half
+ * and blocks which fall below a quarter full borrow keys from, or merge with, their in-order
+ * neighbour. The AVL balancing is applied to the tree of blocks. Duplicate keys are ignored. Space
+ * complexity: O(n), where n is the number of keys in the tree.
+ *
+ * @param <K> The key value to store in the tree. Must have the Comparable interface implemented.
+ * @author Aaron Mussig (https://github.com/aaronmussig)
+ */
+public class BlockAVLTree<K extends Comparable<? super K>> {
+
+    private static final int DEFAULT_BLOCK_CAPACITY = 32;
+
+    BlockNode root;                 // The root of the tree.
+    int size;                       // The number of keys in the tree.
+    int blockCount;                 // The number of nodes in the tree.
+    long keyBytes;                  // The estimated bytes retained by the keys.
+    private long minKeyBytes;           // The smallest key size seen since the keys were last sized.
+    private long maxKeyBytes;           // The largest key size seen since the keys were last sized.
+    private final int blockCapacity;    // The maximum number of keys in a block.
+    private final int minimumFill;      // The fewest keys a block may hold when it has a neighbour.
+    private ToLongFunction<? super K> keySizer;     // Estimates the bytes retained by a key.
+
+    /**
+     * Instantiate a new block AVL Tree with the default block capacity.
+     * Time complexity: O(1), as only a single variable is accessed.
+     */
+    public BlockAVLTree() {
+        this(DEFAULT_BLOCK_CAPACITY);
+    }
+
+    /**
+     * Instantiate a new block AVL Tree.
+     * Time complexity: O(1), as only a single variable is accessed.
+     *
+     * @param blockCapacity The maximum number of keys stored in each node.
+     */
+    public BlockAVLTree(int blockCapacity) {
+        if (blockCapacity < 2) {
+            throw new IllegalArgumentException("The block capacity must be at least 2.");
+        }
+        this.blockCapacity = blockCapacity;
+        this.minimumFill = Math.max(1, blockCapacity / 4);
+        this.size = 0;
+        this.blockCount = 0;
+        this.keySizer = Footprint::estimateKeyBytes;
+        resetKeyBytes();
+    }
+
+    /**
+     * @return The number of keys in the tree.
+     * Time complexity: O(1), as only a single variable is accessed.
+     */
+    public int getSize() {
+        return this.size;
+    }
+
+    /**
+     * @return The number of blocks (nodes) in the tree.
+     * Time complexity: O(1), as only a single variable is accessed.
+     */
+    public int getBlockCount() {
+        return this.blockCount;
+    }
+
+    /**
+     * @return The maximum number of keys in each block.
+     * Time complexity: O(1), as only a single variable is accessed.
+     */
+    public int getBlockCapacity() {
+        return this.blockCapacity;
+    }
+
+    /**
+     * Estimate the heap retained by the tree. Every block is counted at its full capacity, as the
+     * key array is allocated up front. The totals are maintained as keys are added and removed, so
+     * the tree is not walked. Time complexity: O(1), as a constant number of variables are accessed.
+     *
+     * @return The block count, height and estimated bytes of the structure and the keys.
+     */
+    public Footprint getFootprint() {
+        int height = (this.root == null) ? 0 : this.root.height;
+        long blockBytes = Footprint.objectBytes(4 * 4 + 5 * Footprint.REFERENCE)
+                + Footprint.referenceArrayBytes(this.blockCapacity);
+        return new Footprint(this.size, this.blockCount, height, this.blockCount * blockBytes, this.keyBytes);
+    }
+
+    /**
+     * Replace the function used to estimate the bytes retained by each key, for keys which are not
+     * boxed primitives or Strings. The keys already in the tree are sized again.
+     * Time complexity: O(n), where n is the number of keys in the tree.
+     *
+     * @param keySizer Estimates the bytes retained by a key.
+     */
+    public void setKeySizer(ToLongFunction<? super K> keySizer) {
+        this.keySizer = keySizer;
+        resetKeyBytes();
+        for (K key : getInorderNodes()) {
+            addKeyBytes(key);
+        }
+    }
+
+    /**
+     * Forget the size of every key, before they are all sized again. Time complexity: O(1).
+     */
+    private void resetKeyBytes() {
+        this.keyBytes = 0;
+        this.minKeyBytes = Long.MAX_VALUE;
+        this.maxKeyBytes = Long.MIN_VALUE;
+    }
+
+    /**
+     * Account for a key added to the tree, tracking whether every key so far has the same size.
+     * Time complexity: O(1) plus the cost of the key sizer.
+     *
+     * @param key The key which was added.
+     */
+    private void addKeyBytes(K key) {
+        long bytes = this.keySizer.applyAsLong(key);
+        this.keyBytes += bytes;
+        this.minKeyBytes = Math.min(this.minKeyBytes, bytes);
+        this.maxKeyBytes = Math.max(this.maxKeyBytes, bytes);
+    }
+
+    /**
+     * Time complexity: O(n), where n is the number of keys in the tree.
+     *
+     * @return A list of all in-order keys.
+     */
+    public List<K> getInorderNodes() {
+        List<K> userList = new ArrayList<>(this.size);
+        traverseInorder(this.root, userList);
+        return userList;
+    }
+
+    /**
+     * The helper function to getInorderNodes. Time complexity: O(n), where n is the number of keys
+     * in the tree.
+     *
+     * @param rootNode The node to start traversal from.
+     * @param userList The list to append the keys to.
+     */
+    private void traverseInorder(BlockNode rootNode, List<K> userList) {
+        if (rootNode != null) {
+            traverseInorder(rootNode.left, userList);
+            for (int i = 0; i < rootNode.count; i++) {
+                userList.add(rootNode.getKey(i));
+            }
+            traverseInorder(rootNode.right, userList);
+        }
+    }
+
+    /**
+     * Time complexity: O(n), where n is the number of keys in the tree.
+     *
+     * @return The string representation of the tree as: [K|K|K]
+     */
+    @Override
+    public String toString() {
+        List<K> keys = getInorderNodes();
+        StringBuilder output = new StringBuilder();
+        output.append("[");
+
+        // Only display the first 10 keys.
+        int max = Math.min(keys.size(), 10);
+        for (int i = 0; i < max; i++) {
+            output.append(String.valueOf(keys.get(i)));
+            if (i < max - 1) {
+                output.append("|");
+            }
+        }
+        if (max < keys.size()) {
+            output.append("...");
+        }
+        output.append("]");
+        return output.toString();
+    }
+
+    /**
+     * Searches the tree for the block whose key range covers the key, then binary searches that
+     * block. Time complexity: O(log(n / b) + log(b)) where n is the number of keys and b is the
+     * block capacity.
+     *
+     * @param key The key to search for.
+     * @return True if the key is found, false otherwise.
+     */
+    public boolean contains(K key) {
+        BlockNode block = findBlock(key);
+        return block != null && block.indexOf(key) >= 0;
+    }
+
+    /**
+     * Time complexity: O(log(n / b)), where n is the number of keys and b is the block capacity.
+     *
+     * @param key The key to search for.
+     * @return The block whose key range covers the key, or null if no block does.
+     */
+    private BlockNode findBlock(K key) {
+        BlockNode currentNode = this.root;
+        while (currentNode != null) {
+            if (key.compareTo(currentNode.getKey(0)) < 0) {
+                currentNode = currentNode.left;                     // Go down the left subtree.
+            } else if (key.compareTo(currentNode.getKey(currentNode.count - 1)) > 0) {
+                currentNode = currentNode.right;                    // Go down the right subtree.
+            } else {
+                return currentNode;                                 // The key can only be here.
+            }
+        }
+        // No block covers the key.
+        return null;
+    }
+
+    /**
+     * Add a new element to the tree. Duplicate keys are ignored. The key is placed in the block
+     * whose range covers it, or in the block at the end of the search path. A full block is split
+     * in half and the upper half becomes a new node directly after it in order. Time complexity:
+     * O(log(n / b) + b) where n is the number of keys and b is the block capacity.
+     *
+     * @param key The key to insert.
+     */
+    public void insert(K key) {
+
+        // Set this as the root node if the tree hasn't been instantiated.
+        if (this.root == null) {
+            this.root = new BlockNode(this.blockCapacity);
+            this.root.insertAt(0, key);
+            this.root.updateHeight();
+            this.blockCount++;
+            this.size++;
+            addKeyBytes(key);
+            return;
+        }
+
+        // Traverse the tree to find the block to insert into.
+        BlockNode target = getInsertionBlock(key);
+        int index = target.indexOf(key);
+        if (index >= 0) {
+            // Duplicates are not allowed.
+            return;
+        }
+        int insertionPoint = -index - 1;
+
+        // Split the block before it overflows, then insert into whichever half covers the key.
+        if (target.count == this.blockCapacity) {
+            BlockNode upper = splitBlock(target);
+            if (insertionPoint > target.count) {
+                insertionPoint -= target.count;
+                target = upper;
+            }
+        }
+        target.insertAt(insertionPoint, key);
+        updateTotals(target);
+        this.size++;
+        addKeyBytes(key);
+    }
+
+    /**
+     * Given a key value, find the block which covers its range, or the last block on the search
+     * path if no block covers it. Time complexity: O(log(n / b)).
+     *
+     * @param key The key to be probed.
+     * @return The block the key belongs in.
+     */
+    private BlockNode getInsertionBlock(K key) {
+        BlockNode currentNode = this.root;
+        while (true) {
+            if (key.compareTo(currentNode.getKey(0)) < 0 && currentNode.left != null) {
+                currentNode = currentNode.left;
+            } else if (key.compareTo(currentNode.getKey(currentNode.count - 1)) > 0 && currentNode.right != null) {
+                currentNode = currentNode.right;
+            } else {
+                return currentNode;
+            }
+        }
+    }
+
+    /**
+     * Move the upper half of a full block into a new block, attached as its in-order successor, and
+     * rebalance. Time complexity: O(log(n / b) + b).
+     *
+     * @param block The full block to split.
+     * @return The new block holding the upper half of the keys.
+     */
+    private BlockNode splitBlock(BlockNode block) {
+        BlockNode upper = new BlockNode(this.blockCapacity);
+        int middle = block.count / 2;
+        System.arraycopy(block.keys, middle, upper.keys, 0, block.count - middle);
+        Arrays.fill(block.keys, middle, block.count, null);
+        upper.count = block.count - middle;
+        block.count = middle;
+
+        // The successor is the leftmost node of the right subtree, or a new right child.
+        if (block.right == null) {
+            block.right = upper;
+        } else {
+            BlockNode leftmost = block.right;
+            while (leftmost.left != null) {
+                leftmost = leftmost.left;
+            }
+            leftmost.left = upper;
+            block = leftmost;
+        }
+        upper.parent = block;
+        this.blockCount++;
+        balanceTree(upper);
+        return upper;
+    }
+
+    /**
+     * Remove a key from the tree. If its block falls below the minimum fill it borrows keys from an
+     * in-order neighbour, or merges with it when both fit in one block. Time complexity:
+     * O(log(n / b) + b) where n is the number of keys and b is the block capacity.
+     *
+     * @param key The key to remove.
+     * @return True if the key was removed, false if it was not in the tree.
+     */
+    public boolean remove(K key) {
+        BlockNode block = findBlock(key);
+        int index = (block == null) ? -1 : block.indexOf(key);
+        if (index < 0) {
+            return false;
+        }
+        block.removeAt(index);
+        updateTotals(block);
+        this.size--;
+        this.keyBytes -= this.keySizer.applyAsLong(key);
+        fixUnderflow(block);
+        return true;
+    }
+
+    /**
+     * Remove every key in the range [from, to). The tree of blocks is split along the search paths
+     * for both bounds, splitting the blocks which straddle them, and the outer pieces are joined
+     * back together using their heights. The two blocks left either side of the cut are then
+     * merged or refilled. Time complexity: O(log(n / b) + b) where n is the number of keys and b
+     * is the block capacity, plus O(k) for the k removed keys only when the keys differ in size.
+     *
+     * @param from The lowest key to remove (inclusive).
+     * @param to   The key to stop removing at (exclusive).
+     * @return The number of keys removed.
+     */
+    public int removeRange(K from, K to) {
+        if (this.root == null || from.compareTo(to) >= 0) {
+            return 0;
+        }
+        NodePair lower = split(this.root, from);
+        NodePair upper = split(lower.right, to);
+        BlockNode before = lastBlock(lower.left);
+        BlockNode after = firstBlock(upper.right);
+        setRoot(join(lower.left, upper.right));
+        int removed = discard(upper.left);
+
+        // Only the blocks either side of the cut can be under filled.
+        if (before != null && after != null
+                && (before.count < this.minimumFill || after.count < this.minimumFill)) {
+            BlockNode merged = rebalancePair(before, after);
+            if (merged != null) {
+                fixUnderflow(merged);
+            }
+        } else {
+            fixUnderflow((before != null) ? before : after);
+        }
+        return removed;
+    }
+
+    /**
+     * Remove every key less than the given key. Time complexity: O(log(n / b) + b) where n is the
+     * number of keys and b is the block capacity, plus O(k) for the k removed keys only when the
+     * keys differ in size.
+     *
+     * @param key The lowest key to keep.
+     * @return The number of keys removed.
+     */
+    public int headTruncate(K key) {
+        NodePair pieces = split(this.root, key);
+        setRoot(pieces.right);
+        int removed = discard(pieces.left);
+        fixUnderflow(firstBlock(this.root));
+        return removed;
+    }
+
+    /**
+     * Remove every key greater than or equal to the given key. Time complexity: O(log(n / b) + b)
+     * where n is the number of keys and b is the block capacity, plus O(k) for the k removed keys
+     * only when the keys differ in size.
+     *
+     * @param key The lowest key to remove.
+     * @return The number of keys removed.
+     */
+    public int tailTruncate(K key) {
+        NodePair pieces = split(this.root, key);
+        setRoot(pieces.left);
+        int removed = discard(pieces.right);
+        fixUnderflow(lastBlock(this.root));
+        return removed;
+    }
+
+    /**
+     * Restore the minimum fill of a block by merging it with, or borrowing from, an in-order
+     * neighbour. Every other block must already hold the minimum, so a single merge or borrow is
+     * enough. The only block of a tree may hold fewer keys, and is removed once it is empty.
+     * Time complexity: O(log(n / b) + b).
+     *
+     * @param block The block which may have lost keys, or null.
+     */
+    private void fixUnderflow(BlockNode block) {
+        if (block == null || block.count >= this.minimumFill) {
+            return;
+        }
+        BlockNode successor = successor(block);
+        if (successor != null) {
+            rebalancePair(block, successor);
+            return;
+        }
+        BlockNode predecessor = predecessor(block);
+        if (predecessor != null) {
+            rebalancePair(predecessor, block);
+        } else if (block.count == 0) {
+            this.root = null;
+            this.blockCount--;
+        }
+    }
+
+    /**
+     * Merge two adjacent blocks if their keys fit in one, otherwise share the keys evenly between
+     * them. Of two in-order neighbours, one always has at most one child, so that one is the block
+     * removed by a merge. Time complexity: O(log(n / b) + b).
+     *
+     * @param lower The block holding the lower keys.
+     * @param upper The in-order successor of the lower block.
+     * @return The remaining block if they were merged, or null if the keys were shared.
+     */
+    private BlockNode rebalancePair(BlockNode lower, BlockNode upper) {
+        if (lower.count + upper.count > this.blockCapacity) {
+            int target = (lower.count + upper.count) / 2;
+            if (lower.count > target) {
+                lower.moveTailTo(upper, lower.count - target);
+            } else {
+                upper.moveHeadTo(lower, target - lower.count);
+            }
+            updateTotals(lower);
+            updateTotals(upper);
+            return null;
+        }
+
+        // The successor is in the right subtree when there is one, and then has no left child.
+        if (lower.right != null) {
+            upper.moveHeadTo(lower, upper.count);
+            unlinkBlock(upper);
+            updateTotals(lower);
+            return lower;
+        }
+        lower.moveTailTo(upper, lower.count);
+        unlinkBlock(lower);
+        updateTotals(upper);
+        return upper;
+    }
+
+    /**
+     * Recount the subtree totals of a block whose keys changed, and of every block above it.
+     * Time complexity: O(log(n / b)).
+     *
+     * @param block The block whose number of keys changed.
+     */
+    private void updateTotals(BlockNode block) {
+        BlockNode currentNode = block;
+        while (currentNode != null) {
+            currentNode.updateHeight();
+            currentNode = currentNode.parent;
+        }
+    }
+
+    /**
+     * Remove a block with at most one child from the tree, replacing it with that child, and
+     * rebalance up to the root. Time complexity: O(log(n / b)).
+     *
+     * @param block The block to remove.
+     */
+    private void unlinkBlock(BlockNode block) {
+        BlockNode child = (block.left != null) ? block.left : block.right;
+        BlockNode parent = block.parent;
+        if (parent == null) {
+            this.root = child;
+        } else if (parent.left == block) {
+            parent.left = child;
+        } else {
+            parent.right = child;
+        }
+        if (child != null) {
+            child.parent = parent;
+        }
+        block.left = null;
+        block.right = null;
+        block.parent = null;
+        this.blockCount--;
+        balanceTree(parent);
+    }
+
+    /**
+     * Time complexity: O(log(n / b)).
+     *
+     * @param block A block in the tree.
+     * @return The block holding the next higher keys, or null if this is the last block.
+     */
+    private BlockNode successor(BlockNode block) {
+        if (block.right != null) {
+            return firstBlock(block.right);
+        }
+        BlockNode child = block;
+        BlockNode parent = block.parent;
+        while (parent != null && parent.right == child) {
+            child = parent;
+            parent = parent.parent;
+        }
+        return parent;
+    }
+
+    /**
+     * Time complexity: O(log(n / b)).
+     *
+     * @param block A block in the tree.
+     * @return The block holding the next lower keys, or null if this is the first block.
+     */
+    private BlockNode predecessor(BlockNode block) {
+        if (block.left != null) {
+            return lastBlock(block.left);
+        }
+        BlockNode child = block;
+        BlockNode parent = block.parent;
+        while (parent != null && parent.left == child) {
+            child = parent;
+            parent = parent.parent;
+        }
+        return parent;
+    }
+
+    /**
+     * Time complexity: O(log(n / b)).
+     *
+     * @param rootNode The root of a subtree, or null.
+     * @return The leftmost block of the subtree, or null if it is empty.
+     */
+    private BlockNode firstBlock(BlockNode rootNode) {
+        BlockNode currentNode = rootNode;
+        while (currentNode != null && currentNode.left != null) {
+            currentNode = currentNode.left;
+        }
+        return currentNode;
+    }
+
+    /**
+     * Time complexity: O(log(n / b)).
+     *
+     * @param rootNode The root of a subtree, or null.
+     * @return The rightmost block of the subtree, or null if it is empty.
+     */
+    private BlockNode lastBlock(BlockNode rootNode) {
+        BlockNode currentNode = rootNode;
+        while (currentNode != null && currentNode.right != null) {
+            currentNode = currentNode.right;
+        }
+        return currentNode;
+    }
+
+    /**
+     * Make a detached subtree the whole tree. Time complexity: O(1), as a constant number of
+     * references are accessed.
+     *
+     * @param newRoot The new root, or null for an empty tree.
+     */
+    private void setRoot(BlockNode newRoot) {
+        if (newRoot != null) {
+            newRoot.parent = null;
+        }
+        this.root = newRoot;
+    }
+
+    /**
+     * Account for the blocks and keys of a subtree which has been cut from the tree. Both totals
+     * are read from the subtree root, and while every key has had the same size their bytes follow
+     * too; only keys of differing sizes are visited to be sized. Time complexity: O(1), or O(k) for
+     * keys of differing sizes, where k is the number of keys in the subtree.
+     *
+     * @param rootNode The root of the removed subtree.
+     * @return The number of keys removed.
+     */
+    private int discard(BlockNode rootNode) {
+        if (rootNode == null) {
+            return 0;
+        }
+        int removed = rootNode.total;
+        this.size -= removed;
+        this.blockCount -= rootNode.blocks;
+        if (this.minKeyBytes == this.maxKeyBytes) {
+            this.keyBytes -= removed * this.minKeyBytes;
+        } else {
+            this.keyBytes -= sumKeyBytes(rootNode);
+        }
+        return removed;
+    }
+
+    /**
+     * Time complexity: O(k), where k is the number of keys in the subtree.
+     *
+     * @param rootNode The root of a subtree, or null.
+     * @return The estimated bytes retained by the keys of the subtree.
+     */
+    private long sumKeyBytes(BlockNode rootNode) {
+        if (rootNode == null) {
+            return 0;
+        }
+        long bytes = sumKeyBytes(rootNode.left) + sumKeyBytes(rootNode.right);
+        for (int i = 0; i < rootNode.count; i++) {
+            bytes += this.keySizer.applyAsLong(rootNode.getKey(i));
+        }
+        return bytes;
+    }
+
+    /**
+     * Split a subtree into the keys below a bound and the keys at or above it. A block which
+     * straddles the bound is split into two blocks. Every block on the search path is re-joined
+     * with the subtree on its far side. Time complexity: O(log(n / b) + b).
+     *
+     * @param rootNode The subtree to split.
+     * @param key      The lowest key of the upper piece.
+     * @return The lower piece as left and the upper piece as right.
+     */
+    private NodePair split(BlockNode rootNode, K key) {
+        if (rootNode == null) {
+            return new NodePair(null, null);
+        }
+        BlockNode leftChild = rootNode.left;
+        BlockNode rightChild = rootNode.right;
+
+        // This block belongs to the upper piece, along with its right subtree.
+        if (key.compareTo(rootNode.getKey(0)) <= 0) {
+            NodePair pieces = split(leftChild, key);
+            return new NodePair(pieces.left, join(pieces.right, rootNode, rightChild));
+        }
+
+        // This block belongs to the lower piece, along with its left subtree.
+        if (key.compareTo(rootNode.getKey(rootNode.count - 1)) > 0) {
+            NodePair pieces = split(rightChild, key);
+            return new NodePair(join(leftChild, rootNode, pieces.left), pieces.right);
+        }
+
+        // The bound falls inside this block, so its upper keys move to a new block.
+        int index = rootNode.indexOf(key);
+        BlockNode upper = new BlockNode(this.blockCapacity);
+        rootNode.moveTailTo(upper, rootNode.count - ((index >= 0) ? index : -index - 1));
+        this.blockCount++;
+        return new NodePair(join(leftChild, rootNode, null), join(null, upper, rightChild));
+    }
+
+    /**
+     * Join two subtrees where every key in the left is less than every key in the right. The
+     * first block of the right subtree becomes the pivot. Time complexity: O(log(n / b)).
+     *
+     * @param left  The subtree holding the lower keys.
+     * @param right The subtree holding the higher keys.
+     * @return The root of the joined subtree.
+     */
+    private BlockNode join(BlockNode left, BlockNode right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        NodePair pieces = removeFirst(right);
+        return join(left, pieces.left, pieces.right);
+    }
+
+    /**
+     * Detach the first block of a subtree. Time complexity: O(log(n / b)).
+     *
+     * @param rootNode The subtree to remove the first block from.
+     * @return The first block as left and the remaining subtree as right.
+     */
+    private NodePair removeFirst(BlockNode rootNode) {
+        if (rootNode.left == null) {
+            return new NodePair(rootNode, rootNode.right);
+        }
+        NodePair pieces = removeFirst(rootNode.left);
+        return new NodePair(pieces.left, join(pieces.right, rootNode, rootNode.right));
+    }
+
+    /**
+     * Join two subtrees around a pivot block, where the keys of the left subtree are less than the
+     * pivot and the keys of the right subtree are greater. The shorter subtree is attached down the
+     * spine of the taller one at the point where the heights meet. Time complexity:
+     * O(|h(left) - h(right)| + 1), where h is the height of a subtree.
+     *
+     * @param left  The subtree holding the lower keys.
+     * @param pivot The block to place between them.
+     * @param right The subtree holding the higher keys.
+     * @return The root of the joined subtree.
+     */
+    private BlockNode join(BlockNode left, BlockNode pivot, BlockNode right) {
+        if (heightOf(left) > heightOf(right) + 1) {
+            return joinRight(left, pivot, right);
+        }
+        if (heightOf(right) > heightOf(left) + 1) {
+            return joinLeft(left, pivot, right);
+        }
+        link(pivot, left, right);
+        return pivot;
+    }
+
+    /**
+     * Join where the left subtree is the taller, descending its right spine.
+     * Time complexity: O(h(left) - h(right)).
+     *
+     * @param left  The taller subtree holding the lower keys.
+     * @param pivot The block to place between them.
+     * @param right The subtree holding the higher keys.
+     * @return The root of the joined subtree.
+     */
+    private BlockNode joinRight(BlockNode left, BlockNode pivot, BlockNode right) {
+        BlockNode outer = left.left;
+        BlockNode inner = left.right;
+        if (heightOf(inner) <= heightOf(right) + 1) {
+            link(pivot, inner, right);
+            if (pivot.height <= heightOf(outer) + 1) {
+                link(left, outer, pivot);
+                return left;
+            }
+            link(left, outer, rotateRight(pivot));
+            return rotateLeft(left);
+        }
+        BlockNode joined = joinRight(inner, pivot, right);
+        link(left, outer, joined);
+        return (joined.height <= heightOf(outer) + 1) ? left : rotateLeft(left);
+    }
+
+    /**
+     * Join where the right subtree is the taller, descending its left spine.
+     * Time complexity: O(h(right) - h(left)).
+     *
+     * @param left  The subtree holding the lower keys.
+     * @param pivot The block to place between them.
+     * @param right The taller subtree holding the higher keys.
+     * @return The root of the joined subtree.
+     */
+    private BlockNode joinLeft(BlockNode left, BlockNode pivot, BlockNode right) {
+        BlockNode outer = right.right;
+        BlockNode inner = right.left;
+        if (heightOf(inner) <= heightOf(left) + 1) {
+            link(pivot, left, inner);
+            if (pivot.height <= heightOf(outer) + 1) {
+                link(right, pivot, outer);
+                return right;
+            }
+            link(right, rotateLeft(pivot), outer);
+            return rotateRight(right);
+        }
+        BlockNode joined = joinLeft(left, pivot, inner);
+        link(right, joined, outer);
+        return (joined.height <= heightOf(outer) + 1) ? right : rotateRight(right);
+    }
+
+    /**
+     * Time complexity: O(1), as a constant number of references are accessed.
+     *
+     * @param node The root of the subtree to rotate.
+     * @return The new root of the subtree, which was the right child.
+     */
+    private BlockNode rotateLeft(BlockNode node) {
+        BlockNode rightChild = node.right;
+        link(node, node.left, rightChild.left);
+        link(rightChild, node, rightChild.right);
+        return rightChild;
+    }
+
+    /**
+     * Time complexity: O(1), as a constant number of references are accessed.
+     *
+     * @param node The root of the subtree to rotate.
+     * @return The new root of the subtree, which was the left child.
+     */
+    private BlockNode rotateRight(BlockNode node) {
+        BlockNode leftChild = node.left;
+        link(node, leftChild.right, node.right);
+        link(leftChild, leftChild.left, node);
+        return leftChild;
+    }
+
+    /**
+     * Time complexity: O(1), as a constant number of references are accessed.
+     *
+     * @param node The root of a subtree, or null.
+     * @return The height of the subtree.
+     */
+    private int heightOf(BlockNode node) {
+        return (node == null) ? 0 : node.height;
+    }
+
+    /**
+     * Recurse up the tree from a changed block and update height balance, restructuring every
+     * unbalanced node found, as a removal may need more than one. Time complexity: O(log(n / b)).
+     *
+     * @param leafNode The node to start traversing upwards from.
+     */
+    private void balanceTree(BlockNode leafNode) {
+        BlockNode currentNode = leafNode;
+        while (currentNode != null) {
+            currentNode.updateHeight();
+            int balance = currentNode.getBalance();
+            if (balance < -1 || balance > 1) {
+                currentNode = restructure(currentNode);
+            }
+            currentNode = currentNode.parent;
+        }
+    }
+
+    /**
+     * Perform the single or double rotation which rebalances the subtree rooted at z.
+     * Time complexity: O(1), as a constant number of references are accessed.
+     *
+     * @param z The first unbalanced node.
+     * @return The new root of the subtree.
+     */
+    private BlockNode restructure(BlockNode z) {
+        BlockNode y = (z.getLeftHeight() > z.getRightHeight()) ? z.left : z.right;
+
+        // After a removal both children of Y may be equally tall; the outer one needs a single rotation.
+        BlockNode x;
+        if (y.getLeftHeight() != y.getRightHeight()) {
+            x = (y.getLeftHeight() > y.getRightHeight()) ? y.left : y.right;
+        } else {
+            x = (y == z.left) ? y.left : y.right;
+        }
+
+        // Determine the in-order listing of the nodes X,Y,Z and the four subtrees.
+        BlockNode a;
+        BlockNode b;
+        BlockNode c;
+        BlockNode t0;
+        BlockNode t1;
+        BlockNode t2;
+        BlockNode t3;
+
+        // Do a right balance.
+        if (y == z.left && x == y.left) {
+            a = x;
+            b = y;
+            c = z;
+            t0 = x.left;
+            t1 = x.right;
+            t2 = y.right;
+            t3 = z.right;
+        }
+
+        // Do a left/right balance.
+        else if (y == z.left) {
+            a = y;
+            b = x;
+            c = z;
+            t0 = y.left;
+            t1 = x.left;
+            t2 = x.right;
+            t3 = z.right;
+        }
+
+        // Do a right/left balance.
+        else if (x == y.left) {
+            a = z;
+            b = x;
+            c = y;
+            t0 = z.left;
+            t1 = x.left;
+            t2 = x.right;
+            t3 = y.right;
+        }
+
+        // Do a left balance.
+        else {
+            a = z;
+            b = y;
+            c = x;
+            t0 = z.left;
+            t1 = y.left;
+            t2 = x.left;
+            t3 = x.right;
+        }
+
+        // Replace the subtree rooted at z with a new subtree rooted at b.
+        BlockNode parent = z.parent;
+        if (parent == null) {
+            this.root = b;
+        } else if (parent.left == z) {
+            parent.left = b;
+        } else {
+            parent.right = b;
+        }
+        b.parent = parent;
+        link(a, t0, t1);
+        link(c, t2, t3);
+        link(b, a, c);
+        return b;
+    }
+
+    /**
+     * Attach two subtrees to a node and update its height.
+     * Time complexity: O(1), as a constant number of references are accessed.
+     *
+     * @param node  The new parent.
+     * @param left  The new left subtree.
+     * @param right The new right subtree.
+     */
+    private void link(BlockNode node, BlockNode left, BlockNode right) {
+        node.left = left;
+        node.right = right;
+        if (left != null) {
+            left.parent = node;
+        }
+        if (right != null) {
+            right.parent = node;
+        }
+        node.updateHeight();
+    }
+
+    /**
+     * Two subtrees produced by splitting the tree. Space complexity: O(1).
+     */
+    private class NodePair {
+
+        private final BlockNode left;   // The lower piece.
+        private final BlockNode right;  // The upper piece.
+
+        /**
+         * Time complexity: O(1), as a constant number of references are accessed.
+         *
+         * @param left  The lower piece.
+         * @param right The upper piece.
+         */
+        private NodePair(BlockNode left, BlockNode right) {
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    /**
+     * A node in the tree which holds a sorted block of keys. Space complexity: O(b), where b is the
+     * block capacity.
+     *
+     * @author Aaron Mussig (https://github.com/aaronmussig)
+     */
+    class BlockNode {
+
+        private final Object[] keys;                // The sorted keys, only [0, count) are used.
+        private int count;                          // The number of keys in this block.
+        private int height;                         // Height of this node.
+        private int total;                          // The number of keys in the subtree of this node.
+        private int blocks;                         // The number of blocks in the subtree of this node.
+        private BlockNode left, right, parent;      // Left and right children.
+
+        /**
+         * Time complexity: O(b), where b is the block capacity.
+         *
+         * @param capacity The maximum number of keys in this block.
+         */
+        private BlockNode(int capacity) {
+            this.keys = new Object[capacity];
+            this.count = 0;
+        }
+
+        /**
+         * Time complexity: O(1), as a constant number of references are accessed.
+         *
+         * @param index The position in the block.
+         * @return The key at the position.
+         */
+        @SuppressWarnings("unchecked")
+        K getKey(int index) {
+            return (K) this.keys[index];
+        }
+
+        /**
+         * Time complexity: O(1), as a constant number of references are accessed.
+         *
+         * @return The number of keys in this block.
+         */
+        int getCount() {
+            return this.count;
+        }
+
+        /**
+         * Time complexity: O(1), as a constant number of references are accessed.
+         *
+         * @return The left child of this node.
+         */
+        BlockNode getLeft() {
+            return this.left;
+        }
+
+        /**
+         * Time complexity: O(1), as a constant number of references are accessed.
+         *
+         * @return The right child of this node.
+         */
+        BlockNode getRight() {
+            return this.right;
+        }
+
+        /**
+         * Binary search the block. Time complexity: O(log(b)), where b is the block capacity.
+         *
+         * @param key The key to search for.
+         * @return The index of the key, or (-(insertion point) - 1) if it is not in the block.
+         */
+        private int indexOf(K key) {
+            int low = 0;
+            int high = this.count - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int comparison = getKey(middle).compareTo(key);
+                if (comparison < 0) {
+                    low = middle + 1;
+                } else if (comparison > 0) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -(low + 1);
+        }
+
+        /**
+         * Shift the keys after the index up and store the key. The block must not be full.
+         * Time complexity: O(b), where b is the block capacity.
+         *
+         * @param index The position to store the key at.
+         * @param key   The key to store.
+         */
+        private void insertAt(int index, K key) {
+            System.arraycopy(this.keys, index, this.keys, index + 1, this.count - index);
+            this.keys[index] = key;
+            this.count++;
+        }
+
+        /**
+         * Remove the key at the index and shift the keys after it down.
+         * Time complexity: O(b), where b is the block capacity.
+         *
+         * @param index The position of the key to remove.
+         */
+        private void removeAt(int index) {
+            System.arraycopy(this.keys, index + 1, this.keys, index, this.count - index - 1);
+            this.count--;
+            this.keys[this.count] = null;
+        }
+
+        /**
+         * Move the highest keys of this block to the front of the next block in order.
+         * Time complexity: O(b), where b is the block capacity.
+         *
+         * @param next   The block holding the next higher keys, with room for the moved keys.
+         * @param number The number of keys to move.
+         */
+        private void moveTailTo(BlockNode next, int number) {
+            System.arraycopy(next.keys, 0, next.keys, number, next.count);
+            System.arraycopy(this.keys, this.count - number, next.keys, 0, number);
+            Arrays.fill(this.keys, this.count - number, this.count, null);
+            this.count -= number;
+            next.count += number;
+        }
+
+        /**
+         * Move the lowest keys of this block to the end of the previous block in order.
+         * Time complexity: O(b), where b is the block capacity.
+         *
+         * @param previous The block holding the next lower keys, with room for the moved keys.
+         * @param number   The number of keys to move.
+         */
+        private void moveHeadTo(BlockNode previous, int number) {
+            System.arraycopy(this.keys, 0, previous.keys, previous.count, number);
+            System.arraycopy(this.keys, number, this.keys, 0, this.count - number);
+            Arrays.fill(this.keys, this.count - number, this.count, null);
+            this.count -= number;
+            previous.count += number;
+        }
+
+        /**
+         * Time complexity: O(1), as a constant number of references are accessed.
+         *
+         * @return The height of the left child.
+         */
+        private int getLeftHeight() {
+            return (this.left == null) ? 0 : this.left.height;
+        }
+
+        /**
+         * Time complexity: O(1), as a constant number of references are accessed.
+         *
+         * @return The height of the right child.
+         */
+        private int getRightHeight() {
+            return (this.right == null) ? 0 : this.right.height;
+        }
+
+        /**
+         * Time complexity: O(1), as a constant number of references are accessed.
+         *
+         * Update the height of this node, and the number of keys and blocks in its subtree.
+         */
+        private void updateHeight() {
+            this.height = Math.max(getLeftHeight(), getRightHeight()) + 1;
+            this.total = this.count + ((this.left == null) ? 0 : this.left.total)
+                    + ((this.right == null) ? 0 : this.right.total);
+            this.blocks = 1 + ((this.left == null) ? 0 : this.left.blocks)
+                    + ((this.right == null) ? 0 : this.right.blocks);
+        }
+
+        /**
+         * Time complexity: O(1), as a constant number of references are accessed.
+         *
+         * @return The number of keys in the subtree of this node.
+         */
+        int getTotal() {
+            return this.total;
+        }
+
+        /**
+         * Time complexity: O(1), as a constant number of references are accessed.
+         *
+         * @return The balance of this node.
+         */
+        private int getBalance() {
+            return getLeftHeight() - getRightHeight();
+        }
+
+        /**
+         * Time complexity: O(b), where b is the block capacity.
+         *
+         * @return The string representation of this node.
+         */
+        @Override
+        public String toString() {
+            StringBuilder output = new StringBuilder("(");
+            for (int i = 0; i < this.count; i++) {
+                if (i > 0) {
+                    output.append(",");
+                }
+                output.append(String.valueOf(this.keys[i]));
+            }
+            return output.append(")").toString();
+        }
+    }
+}
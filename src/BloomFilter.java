@@ -0,0 +1,174 @@
+import java.util.function.ToLongFunction;
+
+/**
+ * A Bloom filter which answers whether a key may be in a tree, used to reject searches for absent
+ * keys without descending the tree. Keys are hashed once with the supplied key hash and the probe
+ * positions are derived from the two halves of that hash, so each query costs one hash and k bit
+ * reads. The filter can only grow: keys are never removed, so it is rebuilt from the tree when
+ * it becomes too full or holds too many keys which have since been removed. Space complexity: O(m),
+ * where m is the number of bits, which is about 1.44 log2(1/p) bits per key for a false positive
+ * rate of p.
+ *
+ * @param <K> The type of the keys.
+ * @author Aaron Mussig (https://github.com/aaronmussig)
+ */
+final class BloomFilter<K> {
+
+    private static final int MIN_CAPACITY = 64;    // The fewest keys a filter is sized for.
+
+    private final double falsePositiveRate;        // The target rate at full capacity.
+    private final ToLongFunction<? super K> keyHash;    // Hashes a single key.
+    private long[] bits;                           // The bit array, a power of two in length.
+    private int hashCount;                         // The number of bits set per key.
+    private int capacity;                          // The number of keys the filter is sized for.
+    private int entries;                           // The keys added since the last rebuild.
+    private long queries;                          // Searches checked against the filter.
+    private long rejections;                       // Searches answered by the filter alone.
+    private long falsePositives;                   // Searches passed by the filter but not found.
+    private int rebuilds;                          // Times the filter has been cleared and resized.
+
+    /**
+     * Instantiate an empty filter. Time complexity: O(m), where m is the number of bits.
+     *
+     * @param capacity          The number of keys to size the filter for.
+     * @param falsePositiveRate The target false positive rate once the filter holds its capacity.
+     * @param keyHash           Hashes a single key, consistently with how the tree compares keys.
+     */
+    BloomFilter(int capacity, double falsePositiveRate, ToLongFunction<? super K> keyHash) {
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("False positive rate must be in (0, 1): " + falsePositiveRate);
+        }
+        this.falsePositiveRate = falsePositiveRate;
+        this.keyHash = keyHash;
+        allocate(capacity);
+    }
+
+    /**
+     * Clear the filter and size it for a new number of keys. The statistics are kept.
+     * Time complexity: O(m), where m is the number of bits.
+     *
+     * @param capacity The number of keys to size the filter for.
+     */
+    void reset(int capacity) {
+        allocate(capacity);
+        this.rebuilds++;
+    }
+
+    /**
+     * Size the bit array for the capacity, rounded up to a power of two so probes can be masked,
+     * and choose the number of hashes which minimises the false positive rate for that size.
+     * Time complexity: O(m).
+     *
+     * @param capacity The number of keys to size the filter for.
+     */
+    private void allocate(int capacity) {
+        this.capacity = Math.max(MIN_CAPACITY, capacity);
+        double ln2 = Math.log(2);
+        double requiredBits = -this.capacity * Math.log(this.falsePositiveRate) / (ln2 * ln2);
+        long words = Long.highestOneBit(Math.max(1, (long) Math.ceil(requiredBits / 64) - 1)) << 1;
+        this.bits = new long[(int) Math.min(words, 1 << 30)];
+        this.hashCount = (int) Math.max(1, Math.round((double) this.bits.length * 64 / this.capacity * ln2));
+        this.entries = 0;
+    }
+
+    /**
+     * Time complexity: O(k), where k is the number of hashes.
+     *
+     * @param key The key to add.
+     */
+    void add(K key) {
+        addHash(hash(key));
+    }
+
+    /**
+     * Add a key which has already been hashed, so a caller can hash the key before changing any
+     * other state. Time complexity: O(k), where k is the number of hashes.
+     *
+     * @param hash The hash of the key to add, as returned by hash.
+     */
+    void addHash(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        long mask = (long) this.bits.length * 64 - 1;
+        for (int i = 0; i < this.hashCount; i++) {
+            long bit = (h1 + (long) i * h2) & mask;
+            this.bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+        this.entries++;
+    }
+
+    /**
+     * Check a key and count the query. Time complexity: O(k), where k is the number of hashes,
+     * stopping at the first clear bit.
+     *
+     * @param key The key to search for.
+     * @return False if the key was never added, true if it may have been.
+     */
+    boolean mightContain(K key) {
+        this.queries++;
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        long mask = (long) this.bits.length * 64 - 1;
+        for (int i = 0; i < this.hashCount; i++) {
+            long bit = (h1 + (long) i * h2) & mask;
+            if ((this.bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                this.rejections++;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Count a query which the filter passed but the tree did not contain.
+     * Time complexity: O(1).
+     */
+    void recordFalsePositive() {
+        this.falsePositives++;
+    }
+
+    /**
+     * @return The number of keys the filter is sized for.
+     */
+    int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * @return The number of keys added since the last rebuild, including any since removed.
+     */
+    int getEntries() {
+        return this.entries;
+    }
+
+    /**
+     * @return The estimated bytes retained by the filter and its bit array.
+     */
+    long getBytes() {
+        return Footprint.objectBytes(8 + 4 * 4 + 3 * 8 + 2 * Footprint.REFERENCE)
+                + Footprint.align(Footprint.ARRAY_HEADER + 8L * this.bits.length);
+    }
+
+    /**
+     * Time complexity: O(1), as a constant number of variables are accessed.
+     *
+     * @return A snapshot of the size and effectiveness of the filter.
+     */
+    FilterStats getStats() {
+        return new FilterStats(this.capacity, (long) this.bits.length * 64, this.hashCount, this.entries,
+                this.falsePositiveRate, this.queries, this.rejections, this.falsePositives, this.rebuilds);
+    }
+
+    /**
+     * Hash the key and mix the result again, so that a key hash which returns plain values such as
+     * ids still spreads sequential keys over the whole bit array. Time complexity: O(1) plus the
+     * cost of the key hash.
+     *
+     * @param key The key to hash.
+     * @return The 64 bit hash.
+     */
+    long hash(K key) {
+        return KeyHash.mix(this.keyHash.applyAsLong(key));
+    }
+}
@@ -0,0 +1,291 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A thread-safe front-end to an AVL tree which uses flat combining. Callers publish their
+ * operations to a shared queue and whichever caller acquires the lock becomes the combiner: it
+ * drains the queue, applies the inserts as one sorted batch followed by the searches, and completes
+ * the futures of every caller. The tree is therefore only ever touched by one thread at a time and
+ * the lock is handed over once per batch rather than once per operation. A combiner applies at most
+ * a few batches before returning, and callers waiting on an operation which is still pending take
+ * a turn as combiner themselves, so no caller is kept serving others indefinitely. Space
+ * complexity: O(n + p),
+ * where n is the number of keys and p is the number of pending operations.
+ *
+ * @param <K> The key value to store in the tree. Must have the Comparable interface implemented.
+ * @author Aaron Mussig (https://github.com/aaronmussig)
+ */
+public class CombiningAVLTree<K extends Comparable<? super K>> {
+
+    private static final int MAX_PASSES = 4;            // Batches a combiner applies before returning.
+    private static final long PARK_NANOS = 1000;        // The pause between attempts to combine.
+
+    private final AVLTree<K> tree;                          // The tree which the batches are applied to.
+    private final ConcurrentLinkedQueue<Operation> pending; // Operations waiting for a combiner.
+    private final ReentrantLock combinerLock;               // Held by the current combiner.
+    private volatile int size;                              // The size after the last batch.
+
+    /**
+     * Instantiate a new combining tree.
+     * Time complexity: O(1), as a constant number of variables are accessed.
+     */
+    public CombiningAVLTree() {
+        this.tree = new AVLTree<>();
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.combinerLock = new ReentrantLock();
+        this.size = 0;
+    }
+
+    /**
+     * Time complexity: O(1), as only a single variable is accessed.
+     *
+     * @return The number of nodes in the tree after the most recent batch.
+     */
+    public int getSize() {
+        return this.size;
+    }
+
+    /**
+     * Add a new element to the tree and wait for it to be applied. Duplicate keys are ignored.
+     * Time complexity: O(log(n)) amortised over the batch, where n is the number of nodes in the tree.
+     *
+     * @param key The key to insert.
+     */
+    public void insert(K key) {
+        insertAsync(key).join();
+    }
+
+    /**
+     * Publish an insertion without waiting for it. The operation is applied by the current or next
+     * combiner; waiting on the future with join or get also takes a turn combining. Time complexity:
+     * O(log(n)) amortised over the batch, where n is the number of nodes in the tree.
+     *
+     * @param key The key to insert.
+     * @return A future which completes with true if the key was added, false if it was a duplicate.
+     * @throws NullPointerException If the key is null.
+     */
+    public CompletableFuture<Boolean> insertAsync(K key) {
+        return submit(new Operation(key, true));
+    }
+
+    /**
+     * Searches the tree and waits for the result. Time complexity: O(log(n)) where n is the number
+     * of nodes in the tree.
+     *
+     * @param key The key to search for.
+     * @return True if the key is found, false otherwise.
+     */
+    public boolean contains(K key) {
+        return containsAsync(key).join();
+    }
+
+    /**
+     * Publish a search without waiting for it. Searches in a batch observe every insert of the same
+     * batch. Waiting on the future with join or get also takes a turn combining. Time complexity:
+     * O(log(n)) where n is the number of nodes in the tree.
+     *
+     * @param key The key to search for.
+     * @return A future which completes with true if the key is found, false otherwise.
+     * @throws NullPointerException If the key is null.
+     */
+    public CompletableFuture<Boolean> containsAsync(K key) {
+        return submit(new Operation(key, false));
+    }
+
+    /**
+     * Time complexity: O(n), where n is the number of nodes in the tree.
+     *
+     * @return A list of all in-order nodes, taken between two batches.
+     */
+    public List<K> getInorderNodes() {
+        this.combinerLock.lock();
+        try {
+            return this.tree.getInorderNodes();
+        } finally {
+            this.combinerLock.unlock();
+
+            // Apply anything which was published while the lock was held.
+            combine();
+        }
+    }
+
+    /**
+     * Publish the operation and try to become the combiner. Callers which lose the race simply wait
+     * on the future, which is completed by the combiner. Null keys are rejected here, so they never
+     * reach a batch shared with other callers.
+     *
+     * @param operation The operation to publish.
+     * @return The future of the operation.
+     * @throws NullPointerException If the key of the operation is null.
+     */
+    private CompletableFuture<Boolean> submit(Operation operation) {
+        if (operation.key == null) {
+            throw new NullPointerException("Keys must not be null");
+        }
+        this.pending.add(operation);
+        combine();
+        return operation.result;
+    }
+
+    /**
+     * Drain and apply batches while the queue is not empty, up to a fixed number of passes so the
+     * combiner's own caller is not held up by a steady stream of other callers. Operations left in
+     * the queue are picked up by their own callers, which keep combining until they are done.
+     * Time complexity: O(b log(n)) for the b drained operations.
+     */
+    private void combine() {
+        for (int pass = 0; pass < MAX_PASSES && !this.pending.isEmpty(); pass++) {
+            if (!this.combinerLock.tryLock()) {
+                return;
+            }
+            try {
+                List<Operation> batch = new ArrayList<>();
+                Operation operation;
+                while ((operation = this.pending.poll()) != null) {
+                    batch.add(operation);
+                }
+                try {
+                    apply(batch);
+                } catch (Throwable e) {
+                    // Fail the operations which had not completed, rather than leaving callers waiting.
+                    for (Operation failed : batch) {
+                        failed.result.completeExceptionally(e);
+                    }
+                }
+            } finally {
+                this.combinerLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Take turns combining until the operation is done, pausing briefly whenever another thread
+     * holds the combiner role. Time complexity: O(b log(n)) for the b operations applied by this
+     * caller.
+     *
+     * @param result   The future of an operation published by this caller.
+     * @param timed    True to give up at the deadline, false to wait until the operation is done.
+     * @param deadline The System.nanoTime to give up at, when timed.
+     */
+    private void awaitCombined(CompletableFuture<Boolean> result, boolean timed, long deadline) {
+        while (!result.isDone() && (!timed || System.nanoTime() - deadline < 0)) {
+            combine();
+            if (!result.isDone()) {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Apply the inserts in key order, so consecutive insertions follow nearby paths, and then
+     * answer the searches. An operation which throws fails only its own future; if the keys cannot
+     * be sorted the inserts are applied in arrival order instead. Time complexity:
+     * O(b log(b) + b log(n)) for a batch of b operations.
+     *
+     * @param batch The operations to apply.
+     */
+    private void apply(List<Operation> batch) {
+        List<Operation> inserts = new ArrayList<>();
+        List<Operation> searches = new ArrayList<>();
+        for (Operation operation : batch) {
+            (operation.isInsert ? inserts : searches).add(operation);
+        }
+        try {
+            inserts.sort((a, b) -> a.key.compareTo(b.key));
+        } catch (RuntimeException e) {
+            // A key which cannot be compared fails on its own insert below.
+        }
+
+        for (Operation operation : inserts) {
+            try {
+                int before = this.tree.getSize();
+                this.tree.insert(operation.key);
+                operation.result.complete(this.tree.getSize() != before);
+            } catch (Throwable e) {
+                operation.result.completeExceptionally(e);
+            }
+        }
+        this.size = this.tree.getSize();
+
+        for (Operation operation : searches) {
+            try {
+                operation.result.complete(this.tree.contains(operation.key));
+            } catch (Throwable e) {
+                operation.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * A published operation and the future of its caller. Space complexity: O(1).
+     */
+    private class Operation {
+
+        private final K key;                                // The key to insert or search for.
+        private final boolean isInsert;                     // True for an insert, false for a search.
+        private final CompletableFuture<Boolean> result;    // Completed by the combiner.
+
+        /**
+         * Time complexity: O(1), as a constant number of references are accessed.
+         *
+         * @param key      The key to insert or search for.
+         * @param isInsert True for an insert, false for a search.
+         */
+        private Operation(K key, boolean isInsert) {
+            this.key = key;
+            this.isInsert = isInsert;
+            this.result = new OperationFuture();
+        }
+    }
+
+    /**
+     * The future of a published operation. Waiting on it takes turns combining, so an operation
+     * left pending by a combiner which reached its pass limit is still applied. Space complexity:
+     * O(1).
+     */
+    private class OperationFuture extends CompletableFuture<Boolean> {
+
+        /**
+         * @return True or false as for the operation.
+         */
+        @Override
+        public Boolean join() {
+            awaitCombined(this, false, 0);
+            return super.join();
+        }
+
+        /**
+         * @return True or false as for the operation.
+         * @throws InterruptedException If interrupted while waiting.
+         * @throws ExecutionException   If the operation failed.
+         */
+        @Override
+        public Boolean get() throws InterruptedException, ExecutionException {
+            awaitCombined(this, false, 0);
+            return super.get();
+        }
+
+        /**
+         * @param timeout The longest time to wait.
+         * @param unit    The unit of the timeout.
+         * @return True or false as for the operation.
+         * @throws InterruptedException If interrupted while waiting.
+         * @throws ExecutionException   If the operation failed.
+         * @throws TimeoutException     If the operation was not applied in time.
+         */
+        @Override
+        public Boolean get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            awaitCombined(this, true, deadline);
+            return super.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * A snapshot of the size and effectiveness of the Bloom filter in front of a tree's searches. The
+ * query counts accumulate from when the filter was enabled, across rebuilds. Space complexity: O(1).
+ *
+ * @author Aaron Mussig (https://github.com/aaronmussig)
+ */
+public final class FilterStats {
+
+    private final int capacity;                 // The number of keys the filter is sized for.
+    private final long bitCount;                // The number of bits in the filter.
+    private final int hashCount;                // The number of bits set per key.
+    private final int entries;                  // The keys added since the last rebuild.
+    private final double targetRate;            // The configured false positive rate.
+    private final long queries;                 // Searches checked against the filter.
+    private final long rejections;              // Searches answered by the filter alone.
+    private final long falsePositives;          // Searches passed by the filter but not found.
+    private final int rebuilds;                 // Times the filter has been cleared and resized.
+
+    /**
+     * Time complexity: O(1), as a constant number of references are accessed.
+     *
+     * @param capacity       The number of keys the filter is sized for.
+     * @param bitCount       The number of bits in the filter.
+     * @param hashCount      The number of bits set per key.
+     * @param entries        The keys added since the last rebuild.
+     * @param targetRate     The configured false positive rate.
+     * @param queries        Searches checked against the filter.
+     * @param rejections     Searches answered by the filter alone.
+     * @param falsePositives Searches passed by the filter but not found.
+     * @param rebuilds       Times the filter has been cleared and resized.
+     */
+    FilterStats(int capacity, long bitCount, int hashCount, int entries, double targetRate, long queries,
+                long rejections, long falsePositives, int rebuilds) {
+        this.capacity = capacity;
+        this.bitCount = bitCount;
+        this.hashCount = hashCount;
+        this.entries = entries;
+        this.targetRate = targetRate;
+        this.queries = queries;
+        this.rejections = rejections;
+        this.falsePositives = falsePositives;
+        this.rebuilds = rebuilds;
+    }
+
+    /**
+     * @return The number of keys the filter is sized for before it is resized.
+     */
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * @return The number of bits in the filter.
+     */
+    public long getBitCount() {
+        return this.bitCount;
+    }
+
+    /**
+     * @return The number of bits set per key.
+     */
+    public int getHashCount() {
+        return this.hashCount;
+    }
+
+    /**
+     * @return The keys added since the last rebuild, including any removed from the tree since.
+     */
+    public int getEntries() {
+        return this.entries;
+    }
+
+    /**
+     * @return The configured false positive rate at full capacity.
+     */
+    public double getTargetRate() {
+        return this.targetRate;
+    }
+
+    /**
+     * @return The number of searches checked against the filter.
+     */
+    public long getQueries() {
+        return this.queries;
+    }
+
+    /**
+     * @return The number of searches answered by the filter without descending the tree.
+     */
+    public long getRejections() {
+        return this.rejections;
+    }
+
+    /**
+     * @return The number of searches the filter passed for keys which were not in the tree.
+     */
+    public long getFalsePositives() {
+        return this.falsePositives;
+    }
+
+    /**
+     * @return The number of times the filter has been cleared and resized.
+     */
+    public int getRebuilds() {
+        return this.rebuilds;
+    }
+
+    /**
+     * @return The fraction of searches for absent keys which the filter failed to reject, or 0 if
+     * there were none.
+     */
+    public double getFalsePositiveRate() {
+        long misses = this.rejections + this.falsePositives;
+        return (misses == 0) ? 0 : (double) this.falsePositives / misses;
+    }
+
+    /**
+     * @return The string representation of the statistics.
+     */
+    @Override
+    public String toString() {
+        return String.format("entries=%d capacity=%d bits=%d hashes=%d queries=%d rejected=%d "
+                        + "falsePositives=%d (%.4f, target %.4f) rebuilds=%d",
+                this.entries, this.capacity, this.bitCount, this.hashCount, this.queries, this.rejections,
+                this.falsePositives, getFalsePositiveRate(), this.targetRate, this.rebuilds);
+    }
+}
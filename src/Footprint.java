@@ -0,0 +1,152 @@
+/**
+ * An estimate of the heap retained by a tree, split into the tree structure and the keys it holds.
+ * Sizes assume a 64-bit JVM with compressed references (heaps below 32GB): a 12 byte object header,
+ * 4 byte references and objects padded to a multiple of 8 bytes. Trees maintain the totals as keys
+ * are added and removed, so reading a footprint does not walk the tree. Space complexity: O(1).
+ *
+ * @author Aaron Mussig (https://github.com/aaronmussig)
+ */
+public final class Footprint {
+
+    static final int OBJECT_HEADER = 12;    // Mark word and compressed class pointer.
+    static final int ARRAY_HEADER = 16;     // Object header and array length.
+    static final int REFERENCE = 4;         // A compressed reference.
+    static final int ALIGNMENT = 8;         // Objects are padded to this boundary.
+
+    private final int nodeCount;            // The number of nodes in the tree.
+    private final int height;               // The height of the tree.
+    private final long structureBytes;      // The bytes retained by the nodes.
+    private final long keyBytes;            // The bytes retained by the keys.
+    private final int keyCount;             // The number of keys in the tree.
+
+    /**
+     * Time complexity: O(1), as a constant number of references are accessed.
+     *
+     * @param keyCount       The number of keys in the tree.
+     * @param nodeCount      The number of nodes in the tree.
+     * @param height         The height of the tree.
+     * @param structureBytes The bytes retained by the nodes.
+     * @param keyBytes       The bytes retained by the keys.
+     */
+    Footprint(int keyCount, int nodeCount, int height, long structureBytes, long keyBytes) {
+        this.keyCount = keyCount;
+        this.nodeCount = nodeCount;
+        this.height = height;
+        this.structureBytes = structureBytes;
+        this.keyBytes = keyBytes;
+    }
+
+    /**
+     * @return The number of keys in the tree.
+     */
+    public int getKeyCount() {
+        return this.keyCount;
+    }
+
+    /**
+     * @return The number of nodes in the tree.
+     */
+    public int getNodeCount() {
+        return this.nodeCount;
+    }
+
+    /**
+     * @return The height of the tree.
+     */
+    public int getHeight() {
+        return this.height;
+    }
+
+    /**
+     * @return The estimated bytes retained by the nodes of the tree, excluding the keys.
+     */
+    public long getStructureBytes() {
+        return this.structureBytes;
+    }
+
+    /**
+     * @return The estimated bytes retained by the keys.
+     */
+    public long getKeyBytes() {
+        return this.keyBytes;
+    }
+
+    /**
+     * @return The estimated bytes retained by the tree and its keys.
+     */
+    public long getTotalBytes() {
+        return this.structureBytes + this.keyBytes;
+    }
+
+    /**
+     * @return The estimated bytes retained per key, or 0 for an empty tree.
+     */
+    public double getBytesPerEntry() {
+        return (this.keyCount == 0) ? 0 : (double) getTotalBytes() / this.keyCount;
+    }
+
+    /**
+     * @return The string representation of the footprint.
+     */
+    @Override
+    public String toString() {
+        return String.format("keys=%d nodes=%d height=%d structure=%dB keys=%dB (%.1fB/entry)",
+                this.keyCount, this.nodeCount, this.height, this.structureBytes, this.keyBytes,
+                getBytesPerEntry());
+    }
+
+    /**
+     * Time complexity: O(1).
+     *
+     * @param bytes The unpadded size of an object.
+     * @return The size after padding to the object alignment.
+     */
+    static long align(long bytes) {
+        return (bytes + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    /**
+     * Time complexity: O(1).
+     *
+     * @param fieldBytes The total size of the fields of an object.
+     * @return The padded size of an object with those fields.
+     */
+    static long objectBytes(long fieldBytes) {
+        return align(OBJECT_HEADER + fieldBytes);
+    }
+
+    /**
+     * Time complexity: O(1).
+     *
+     * @param length The length of a reference array.
+     * @return The padded size of the array.
+     */
+    static long referenceArrayBytes(int length) {
+        return align(ARRAY_HEADER + (long) REFERENCE * length);
+    }
+
+    /**
+     * Estimate the bytes retained by a key on its own. Boxed primitives and Strings are sized
+     * exactly for their layout; any other object is counted as an object header with a single
+     * reference, so trees of such keys should be given their own key sizer. Boxed values shared
+     * through caches, such as small Integers, are counted as if they were not shared.
+     * Time complexity: O(1).
+     *
+     * @param key The key to size.
+     * @return The estimated size of the key in bytes.
+     */
+    public static long estimateKeyBytes(Object key) {
+        if (key instanceof Long || key instanceof Double) {
+            return objectBytes(8);
+        }
+        if (key instanceof Integer || key instanceof Float || key instanceof Short || key instanceof Byte
+                || key instanceof Character || key instanceof Boolean) {
+            return objectBytes(4);
+        }
+        if (key instanceof String) {
+            // The String object (hash, value, coder, hashIsZero) and its Latin-1 byte array.
+            return objectBytes(REFERENCE + 4 + 1 + 1) + align(ARRAY_HEADER + ((String) key).length());
+        }
+        return objectBytes(REFERENCE);
+    }
+}
@@ -0,0 +1,77 @@
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Converts keys to and from the compact binary form used by operation traces. Integral keys are
+ * written as zig-zag variable length integers, so small keys of either sign take one or two bytes.
+ *
+ * @param <K> The type of the keys.
+ * @author Aaron Mussig (https://github.com/aaronmussig)
+ */
+public interface KeyCodec<K> {
+
+    /**
+     * @param key The key to write.
+     * @param out The trace to write the key to.
+     */
+    void write(K key, TraceRecorder<?> out);
+
+    /**
+     * @param in The trace to read the key from.
+     * @return The key.
+     */
+    K read(TraceReader<?> in);
+
+    /**
+     * @return A codec for Integer keys.
+     */
+    static KeyCodec<Integer> integers() {
+        return new KeyCodec<Integer>() {
+            @Override
+            public void write(Integer key, TraceRecorder<?> out) {
+                out.writeVarLong(key);
+            }
+
+            @Override
+            public Integer read(TraceReader<?> in) {
+                return (int) in.readVarLong();
+            }
+        };
+    }
+
+    /**
+     * @return A codec for Long keys.
+     */
+    static KeyCodec<Long> longs() {
+        return new KeyCodec<Long>() {
+            @Override
+            public void write(Long key, TraceRecorder<?> out) {
+                out.writeVarLong(key);
+            }
+
+            @Override
+            public Long read(TraceReader<?> in) {
+                return in.readVarLong();
+            }
+        };
+    }
+
+    /**
+     * @return A codec for String keys, written as a length followed by UTF-8 bytes.
+     */
+    static KeyCodec<String> strings() {
+        return new KeyCodec<String>() {
+            @Override
+            public void write(String key, TraceRecorder<?> out) {
+                byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+                out.writeVarLong(bytes.length);
+                out.writeBytes(bytes);
+            }
+
+            @Override
+            public String read(TraceReader<?> in) {
+                byte[] bytes = in.readBytes((int) in.readVarLong());
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+    }
+}
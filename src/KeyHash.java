@@ -0,0 +1,72 @@
+/**
+ * 64 bit hashes of keys computed from their content, for structures which compare hashes across
+ * trees or replicas. A key's hashCode is only 32 bits and is not required to follow compareTo, so
+ * keys which are different, such as 0L and -1L or "Aa" and "BB", can share one. Boxed primitives
+ * are hashed from their full value and Strings from every character; other key types have no
+ * content hash here and need a hash function supplied by the caller. Space complexity: O(1).
+ *
+ * @author Aaron Mussig (https://github.com/aaronmussig)
+ */
+public final class KeyHash {
+
+    private static final long FNV_OFFSET = 0xCBF29CE484222325L;    // FNV-1a 64 bit offset basis.
+    private static final long FNV_PRIME = 0x100000001B3L;           // FNV-1a 64 bit prime.
+
+    /**
+     * Not instantiable. Time complexity: O(1).
+     */
+    private KeyHash() {
+    }
+
+    /**
+     * Hash a key from its content. Time complexity: O(1) for boxed primitives and O(l) for a String
+     * of length l.
+     *
+     * @param key The key to hash.
+     * @return The 64 bit hash of the key.
+     * @throws IllegalArgumentException If the key is not a boxed primitive or a String.
+     */
+    public static long of(Object key) {
+        if (key instanceof Long || key instanceof Integer || key instanceof Short || key instanceof Byte) {
+            return mix(((Number) key).longValue());
+        }
+        if (key instanceof String) {
+            String string = (String) key;
+            long hash = FNV_OFFSET;
+            for (int i = 0; i < string.length(); i++) {
+                hash = (hash ^ string.charAt(i)) * FNV_PRIME;
+            }
+            return mix(hash);
+        }
+        if (key instanceof Double) {
+            // The canonical bits, which order NaN and -0.0 as Double.compareTo does.
+            return mix(Double.doubleToLongBits((Double) key));
+        }
+        if (key instanceof Float) {
+            return mix(Float.floatToIntBits((Float) key));
+        }
+        if (key instanceof Character) {
+            return mix((Character) key);
+        }
+        if (key instanceof Boolean) {
+            return mix((Boolean) key ? 1 : 0);
+        }
+        throw new IllegalArgumentException("No content hash for keys of type " + key.getClass().getName()
+                + ", a key hash function must be supplied.");
+    }
+
+    /**
+     * Spread the bits of a value over all 64 bits, so that similar values do not produce similar
+     * hashes. Uses the SplitMix64 generator step, which is a bijection and maps 0 to a non-zero
+     * hash. Time complexity: O(1).
+     *
+     * @param value The value to mix.
+     * @return The 64 bit hash.
+     */
+    public static long mix(long value) {
+        long z = value + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,310 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * An AVL tree where every node also stores a hash and a count of the keys in its subtree, kept up
+ * to date through insertion, rebalancing and range removal. The subtree hash is the wrapping sum
+ * of the hashes of its keys, so it depends only on the set of keys and not on the shape of the
+ * tree: two replicas holding the same keys have the same hash for every key range, whatever order
+ * the keys arrived in. Any key range can be digested in O(log(n)) from the stored subtree values,
+ * which lets two replicas find their differences by bisecting only the ranges whose digests
+ * differ. Space complexity: O(n), where n is the number of nodes in the tree.
+ *
+ * @param <K> The key value to store in the tree. Must have the Comparable interface implemented.
+ * @author Aaron Mussig (https://github.com/aaronmussig)
+ */
+public class MerkleAVLTree<K extends Comparable<? super K>> extends AVLTree<K> implements MerkleDigest<K> {
+
+    private final ToLongFunction<? super K> keyHash;    // Hashes a single key.
+
+    /**
+     * Instantiate a new Merkle AVL Tree which hashes keys from their content with KeyHash. Only
+     * boxed primitive and String keys can be inserted; other key types must supply a key hash, as
+     * a 32 bit hashCode shared by two different keys would let a diff report them as in sync.
+     * Time complexity: O(1), as only a single variable is accessed.
+     */
+    public MerkleAVLTree() {
+        this(KeyHash::of);
+    }
+
+    /**
+     * Instantiate a new Merkle AVL Tree.
+     * Time complexity: O(1), as only a single variable is accessed.
+     *
+     * @param keyHash Hashes a single key. Every replica must use the same function, and keys which
+     *                differ should not share a hash: a collision hides the difference from diff.
+     */
+    public MerkleAVLTree(ToLongFunction<? super K> keyHash) {
+        super();
+        this.keyHash = keyHash;
+    }
+
+    /**
+     * Time complexity: O(1), as only the root is accessed.
+     *
+     * @return The hash of every key in the tree.
+     */
+    public long getRootHash() {
+        return hashOf(this.root);
+    }
+
+    /**
+     * Summarise the keys strictly between the two bounds. Time complexity: O(log(n)) where n is the
+     * number of nodes in the tree, as at most two root-to-leaf paths are followed and the subtrees
+     * hanging off them are used as a whole.
+     *
+     * @param low  The exclusive lower bound, or null for no lower bound.
+     * @param high The exclusive upper bound, or null for no upper bound.
+     * @return The hash and count of the keys in the range.
+     */
+    @Override
+    public RangeDigest digest(K low, K high) {
+        AVLNode splitNode = findSplitNode(low, high);
+        if (splitNode == null) {
+            return new RangeDigest(0, 0);
+        }
+        long hash = this.keyHash.applyAsLong(splitNode.getKey());
+        int count = 1;
+
+        // Keys of the left subtree above the lower bound. Right subtrees passed are fully in range.
+        AVLNode currentNode = splitNode.getLeft();
+        while (currentNode != null) {
+            if (low == null || currentNode.getKey().compareTo(low) > 0) {
+                hash += this.keyHash.applyAsLong(currentNode.getKey()) + hashOf(currentNode.getRight());
+                count += 1 + countOf(currentNode.getRight());
+                currentNode = currentNode.getLeft();
+            } else {
+                currentNode = currentNode.getRight();
+            }
+        }
+
+        // Keys of the right subtree below the upper bound. Left subtrees passed are fully in range.
+        currentNode = splitNode.getRight();
+        while (currentNode != null) {
+            if (high == null || currentNode.getKey().compareTo(high) < 0) {
+                hash += this.keyHash.applyAsLong(currentNode.getKey()) + hashOf(currentNode.getLeft());
+                count += 1 + countOf(currentNode.getLeft());
+                currentNode = currentNode.getRight();
+            } else {
+                currentNode = currentNode.getLeft();
+            }
+        }
+        return new RangeDigest(hash, count);
+    }
+
+    /**
+     * Time complexity: O(log(n) + k), where n is the number of nodes in the tree and k is the
+     * number of keys in the range.
+     *
+     * @param low  The exclusive lower bound, or null for no lower bound.
+     * @param high The exclusive upper bound, or null for no upper bound.
+     * @return The keys strictly between the two bounds, in order.
+     */
+    @Override
+    public List<K> keys(K low, K high) {
+        List<K> userList = new ArrayList<>();
+        traverseOpenRange(this.root, low, high, userList);
+        return userList;
+    }
+
+    /**
+     * Find the keys which differ between this tree and another replica. Both sides digest the same
+     * key ranges; a range whose digests match is skipped, otherwise it is split at the local key
+     * nearest the root inside it and both halves are compared. The remote digests of both halves
+     * are fetched with a single digestSplit request. A range which is empty on one side is resolved
+     * by fetching the keys of the other. Time complexity: O(d log(n)) requests of O(log(n)) each,
+     * where d is the number of differences and n is the number of keys.
+     *
+     * @param remote The other replica, or a stand-in that forwards requests to it.
+     * @return The keys missing from each side.
+     */
+    public Diff<K> diff(MerkleDigest<K> remote) {
+        Diff<K> result = new Diff<>();
+        diffRange(null, null, digest(null, null), remote.digest(null, null), remote, result);
+        return result;
+    }
+
+    /**
+     * The helper function to diff, which compares the keys strictly between the two bounds.
+     * Differences are appended in key order.
+     *
+     * @param low          The exclusive lower bound, or null for no lower bound.
+     * @param high         The exclusive upper bound, or null for no upper bound.
+     * @param localDigest  The digest of this range in this tree.
+     * @param remoteDigest The digest of this range in the remote replica.
+     * @param remote       The remote replica.
+     * @param result       The differences found so far.
+     */
+    private void diffRange(K low, K high, RangeDigest localDigest, RangeDigest remoteDigest,
+                           MerkleDigest<K> remote, Diff<K> result) {
+        if (localDigest.equals(remoteDigest)) {
+            return;
+        }
+        if (localDigest.getCount() == 0) {
+            result.missingLocally.addAll(remote.keys(low, high));
+            return;
+        }
+        if (remoteDigest.getCount() == 0) {
+            result.missingRemotely.addAll(keys(low, high));
+            return;
+        }
+
+        // Bisect at the local key nearest the root, which is always inside the range.
+        K pivot = findSplitNode(low, high).getKey();
+        RangeDigest[] remoteHalves = remote.digestSplit(low, pivot, high);
+        RangeDigest remoteBelow = remoteHalves[0];
+        RangeDigest remoteAbove = remoteHalves[1];
+
+        // The pivot is the only key of the range not counted by either half.
+        boolean remoteHasPivot = remoteDigest.getCount() - remoteBelow.getCount() - remoteAbove.getCount() == 1;
+
+        diffRange(low, pivot, digest(low, pivot), remoteBelow, remote, result);
+        if (!remoteHasPivot) {
+            result.missingRemotely.add(pivot);
+        }
+        diffRange(pivot, high, digest(pivot, high), remoteAbove, remote, result);
+    }
+
+    /**
+     * Find the highest node strictly between the two bounds, which is where the search paths for
+     * the bounds diverge. Time complexity: O(log(n)).
+     *
+     * @param low  The exclusive lower bound, or null for no lower bound.
+     * @param high The exclusive upper bound, or null for no upper bound.
+     * @return The node, or null if the range is empty.
+     */
+    private AVLNode findSplitNode(K low, K high) {
+        AVLNode currentNode = this.root;
+        while (currentNode != null) {
+            if (low != null && currentNode.getKey().compareTo(low) <= 0) {
+                currentNode = currentNode.getRight();   // The whole range is to the right.
+            } else if (high != null && currentNode.getKey().compareTo(high) >= 0) {
+                currentNode = currentNode.getLeft();    // The whole range is to the left.
+            } else {
+                return currentNode;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The helper function to keys. Only subtrees which may overlap the range are visited.
+     * Time complexity: O(log(n) + k).
+     *
+     * @param rootNode The node to start traversal from.
+     * @param low      The exclusive lower bound, or null for no lower bound.
+     * @param high     The exclusive upper bound, or null for no upper bound.
+     * @param userList The list to append the keys to.
+     */
+    private void traverseOpenRange(AVLNode rootNode, K low, K high, List<K> userList) {
+        if (rootNode == null) {
+            return;
+        }
+        boolean aboveLow = low == null || rootNode.getKey().compareTo(low) > 0;
+        boolean belowHigh = high == null || rootNode.getKey().compareTo(high) < 0;
+        if (aboveLow) {
+            traverseOpenRange(rootNode.getLeft(), low, high, userList);
+        }
+        if (aboveLow && belowHigh) {
+            userList.add(rootNode.getKey());
+        }
+        if (belowHigh) {
+            traverseOpenRange(rootNode.getRight(), low, high, userList);
+        }
+    }
+
+    /**
+     * Time complexity: O(1), as a constant number of references are accessed.
+     *
+     * @param node The root of the subtree, or null.
+     * @return The hash stored at the node, or 0 for an empty subtree.
+     */
+    private long hashOf(AVLNode node) {
+        return (node == null) ? 0 : ((HashNode) node).hash;
+    }
+
+    /**
+     * The estimated size of one node, which also holds the subtree hash and its own reference to
+     * the enclosing tree. Time complexity: O(1).
+     *
+     * @return The estimated bytes of a single node, excluding its key.
+     */
+    @Override
+    long nodeBytes() {
+        return Footprint.objectBytes(4 + 4 + 6 * Footprint.REFERENCE + 8);
+    }
+
+    /**
+     * Time complexity: O(1), as a constant number of references are accessed.
+     *
+     * @param key The key of the new node.
+     * @return A node which stores its subtree hash.
+     */
+    @Override
+    AVLNode createNode(K key) {
+        return new HashNode(key);
+    }
+
+    /**
+     * The keys found on only one side of a diff, each in key order. Space complexity: O(d), where d
+     * is the number of differences.
+     *
+     * @param <K> The type of the keys.
+     */
+    public static final class Diff<K> {
+
+        private final List<K> missingLocally = new ArrayList<>();   // Keys only the remote holds.
+        private final List<K> missingRemotely = new ArrayList<>();  // Keys only this tree holds.
+
+        /**
+         * @return The keys held by the remote replica but not by this tree.
+         */
+        public List<K> getMissingLocally() {
+            return this.missingLocally;
+        }
+
+        /**
+         * @return The keys held by this tree but not by the remote replica.
+         */
+        public List<K> getMissingRemotely() {
+            return this.missingRemotely;
+        }
+
+        /**
+         * @return True if both sides hold the same keys.
+         */
+        public boolean isEmpty() {
+            return this.missingLocally.isEmpty() && this.missingRemotely.isEmpty();
+        }
+    }
+
+    /**
+     * A node which also stores the hash of its subtree; the key count is kept by every node.
+     * Space complexity: O(1).
+     */
+    private class HashNode extends AVLNode {
+
+        private long hash;  // The sum of the hashes of every key in this subtree.
+
+        /**
+         * Time complexity: O(1), as a constant number of references are accessed.
+         *
+         * @param key The key of this node.
+         */
+        private HashNode(K key) {
+            super(key);
+            this.hash = MerkleAVLTree.this.keyHash.applyAsLong(key);
+        }
+
+        /**
+         * Update the height, count and hash of this node from its children. Time complexity: O(1),
+         * as a constant number of references are accessed.
+         */
+        @Override
+        void updateHeight() {
+            super.updateHeight();
+            this.hash = MerkleAVLTree.this.keyHash.applyAsLong(getKey()) + hashOf(getLeft()) + hashOf(getRight());
+        }
+    }
+}
@@ -0,0 +1,93 @@
+import java.util.List;
+
+/**
+ * The requests a replica answers while two MerkleAVLTrees are compared. A local MerkleAVLTree
+ * implements it directly; a remote replica is reached through a stand-in which forwards each call
+ * over the network and returns the answer.
+ *
+ * @param <K> The type of the keys.
+ * @author Aaron Mussig (https://github.com/aaronmussig)
+ */
+public interface MerkleDigest<K> {
+
+    /**
+     * @param low  The exclusive lower bound, or null for no lower bound.
+     * @param high The exclusive upper bound, or null for no upper bound.
+     * @return The hash and count of the keys strictly between the bounds.
+     */
+    RangeDigest digest(K low, K high);
+
+    /**
+     * Digest both halves of a range either side of a pivot, which is what each step of a diff
+     * needs. A stand-in for a remote replica should override this to send both ranges in a single
+     * request, so each step costs one round trip; the default asks for each half separately.
+     *
+     * @param low   The exclusive lower bound, or null for no lower bound.
+     * @param pivot The key separating the halves, which is in neither.
+     * @param high  The exclusive upper bound, or null for no upper bound.
+     * @return The digests of the keys between low and pivot, and between pivot and high.
+     */
+    default RangeDigest[] digestSplit(K low, K pivot, K high) {
+        return new RangeDigest[]{digest(low, pivot), digest(pivot, high)};
+    }
+
+    /**
+     * @param low  The exclusive lower bound, or null for no lower bound.
+     * @param high The exclusive upper bound, or null for no upper bound.
+     * @return The keys strictly between the bounds, in order.
+     */
+    List<K> keys(K low, K high);
+
+    /**
+     * The hash and count of the keys in a range. Space complexity: O(1).
+     */
+    final class RangeDigest {
+
+        private final long hash;    // The sum of the key hashes.
+        private final int count;    // The number of keys.
+
+        /**
+         * Time complexity: O(1), as a constant number of references are accessed.
+         *
+         * @param hash  The sum of the key hashes.
+         * @param count The number of keys.
+         */
+        public RangeDigest(long hash, int count) {
+            this.hash = hash;
+            this.count = count;
+        }
+
+        /**
+         * @return The sum of the key hashes.
+         */
+        public long getHash() {
+            return this.hash;
+        }
+
+        /**
+         * @return The number of keys.
+         */
+        public int getCount() {
+            return this.count;
+        }
+
+        @Override
+        public boolean equals(Object that) {
+            if (!(that instanceof RangeDigest)) {
+                return false;
+            }
+            RangeDigest other = (RangeDigest) that;
+            return this.hash == other.hash && this.count == other.count;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(this.hash) * 31 + this.count;
+        }
+
+        @Override
+        public String toString() {
+            return this.count + ":" + Long.toHexString(this.hash);
+        }
+    }
+}
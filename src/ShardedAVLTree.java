@@ -0,0 +1,482 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * A thread-safe set which partitions the key space across a number of AVL tree shards by split
+ * points. Each shard is guarded by its own lock, so writers touching disjoint key ranges do not
+ * contend with one another. Shards which become skewed are split at their median, and the smallest
+ * adjacent pair of shards is merged when the shard limit is exceeded. Space complexity: O(n + s),
+ * where n is the number of keys and s is the number of shards.
+ *
+ * @param <K> The key value to store in the tree. Must have the Comparable interface implemented.
+ * @author Aaron Mussig (https://github.com/aaronmussig)
+ */
+public class ShardedAVLTree<K extends Comparable<? super K>> {
+
+    private static final int DEFAULT_MAX_SHARDS = 64;
+    private static final int DEFAULT_MIN_SPLIT_SIZE = 4096;
+    private static final int CHECK_INTERVAL = 64;
+    private static final int SCAN_ATTEMPTS = 4;     // Optimistic scans before the layout is pinned.
+
+    private volatile List<Shard> shards;            // The shards, ordered by their lower bound.
+    private final LongAdder count;                  // The approximate number of keys.
+    private final ReentrantLock rebalanceLock;      // Held while the shard layout is changed.
+    private final int maxShards;                    // The maximum number of shards.
+    private final int minSplitSize;                 // The smallest shard which may be split.
+
+    /**
+     * Instantiate a new sharded tree with a single shard which is split as keys arrive.
+     * Time complexity: O(1), as a constant number of variables are accessed.
+     */
+    public ShardedAVLTree() {
+        this(DEFAULT_MAX_SHARDS, DEFAULT_MIN_SPLIT_SIZE);
+    }
+
+    /**
+     * Instantiate a new sharded tree with a single shard which is split as keys arrive.
+     * Time complexity: O(1), as a constant number of variables are accessed.
+     *
+     * @param maxShards    The maximum number of shards to keep.
+     * @param minSplitSize The number of keys a shard must hold before it can be split.
+     */
+    public ShardedAVLTree(int maxShards, int minSplitSize) {
+        this(new ArrayList<>(), maxShards, minSplitSize);
+    }
+
+    /**
+     * Instantiate a new sharded tree with an initial set of split points. Time complexity: O(s),
+     * where s is the number of split points.
+     *
+     * @param splitPoints  The sorted lower bounds of every shard except the first.
+     * @param maxShards    The maximum number of shards to keep.
+     * @param minSplitSize The number of keys a shard must hold before it can be split.
+     */
+    public ShardedAVLTree(List<K> splitPoints, int maxShards, int minSplitSize) {
+        if (maxShards < 1 || splitPoints.size() >= maxShards) {
+            throw new IllegalArgumentException("The number of shards must be within [1, maxShards].");
+        }
+        List<Shard> initial = new ArrayList<>();
+        initial.add(new Shard(null, new AVLTree<>()));
+        for (int i = 0; i < splitPoints.size(); i++) {
+            K low = splitPoints.get(i);
+            if (i > 0 && low.compareTo(splitPoints.get(i - 1)) <= 0) {
+                throw new IllegalArgumentException("Split points must be strictly increasing.");
+            }
+            initial.add(new Shard(low, new AVLTree<>()));
+        }
+        this.shards = initial;
+        this.count = new LongAdder();
+        this.rebalanceLock = new ReentrantLock();
+        this.maxShards = maxShards;
+        this.minSplitSize = minSplitSize;
+    }
+
+    /**
+     * Add a new element to the tree. Duplicate keys are ignored. Only the shard which owns the key
+     * is locked. Time complexity: O(log(n) + log(s)), where n is the number of keys in the shard and
+     * s is the number of shards, plus an amortised rebalance of the shard layout.
+     *
+     * @param key The key to insert.
+     */
+    public void insert(K key) {
+        while (true) {
+            Shard shard = findShard(this.shards, key);
+            long stamp = shard.lock.writeLock();
+            int oldSize;
+            int newSize;
+            try {
+                // The shard was replaced while we waited for the lock, look it up again.
+                if (shard.retired) {
+                    continue;
+                }
+                oldSize = shard.tree.getSize();
+                shard.tree.insert(key);
+                newSize = shard.tree.getSize();
+            } finally {
+                shard.lock.unlockWrite(stamp);
+            }
+
+            // Periodically check whether this shard has outgrown its share of the keys.
+            if (newSize != oldSize) {
+                this.count.increment();
+                if (newSize % CHECK_INTERVAL == 0 && newSize >= splitThreshold()) {
+                    rebalance();
+                }
+            }
+            return;
+        }
+    }
+
+    /**
+     * Searches the shard which owns the key. Time complexity: O(log(n) + log(s)), where n is the
+     * number of keys in the shard and s is the number of shards.
+     *
+     * @param key The key to search for.
+     * @return True if the key is found, false otherwise.
+     */
+    public boolean contains(K key) {
+        while (true) {
+            Shard shard = findShard(this.shards, key);
+            long stamp = shard.lock.readLock();
+            try {
+                if (!shard.retired) {
+                    return shard.tree.contains(key);
+                }
+            } finally {
+                shard.lock.unlockRead(stamp);
+            }
+        }
+    }
+
+    /**
+     * The size is the sum of the shard sizes, each read under its own lock, so it is only exact
+     * when there are no concurrent writers. Time complexity: O(s), where s is the number of shards.
+     *
+     * @return The number of keys in the tree.
+     */
+    public int getSize() {
+        int total = 0;
+        for (Shard shard : this.shards) {
+            long stamp = shard.lock.readLock();
+            try {
+                total += shard.tree.getSize();
+            } finally {
+                shard.lock.unlockRead(stamp);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Time complexity: O(1), as only a single variable is accessed.
+     *
+     * @return The current number of shards.
+     */
+    public int getShardCount() {
+        return this.shards.size();
+    }
+
+    /**
+     * Time complexity: O(n), where n is the number of keys in the tree.
+     *
+     * @return A list of all keys in order.
+     */
+    public List<K> getInorderNodes() {
+        List<K> keys = new ArrayList<>();
+        for (List<K> part : scanShards(null, null)) {
+            keys.addAll(part);
+        }
+        return keys;
+    }
+
+    /**
+     * Collect the keys in the range [from, to). The shards overlapping the range are scanned in
+     * parallel and the results are concatenated in shard order, so the output is sorted. Time
+     * complexity: O(s * log(n) + k) total work, where s is the number of shards scanned, n is the
+     * number of keys in a shard and k is the number of keys in the range.
+     *
+     * @param from The lowest key to include (inclusive).
+     * @param to   The key to stop at (exclusive).
+     * @return A sorted list of the keys in the range.
+     */
+    public List<K> getRangeNodes(K from, K to) {
+        List<K> keys = new ArrayList<>();
+        if (from.compareTo(to) >= 0) {
+            return keys;
+        }
+
+        for (List<K> part : scanShards(from, to)) {
+            keys.addAll(part);
+        }
+        return keys;
+    }
+
+    /**
+     * Read every shard overlapping the range in parallel, retrying the scan if the layout changed
+     * underneath it. After a few attempts the rebalance lock is held for the scan, so no shard can
+     * be split or merged and the scan always finishes. Time complexity: O(s * log(n) + k) total work.
+     *
+     * @param from The lowest key to include, or null to include everything.
+     * @param to   The key to stop at, or null to include everything.
+     * @return The keys of each shard, in shard order.
+     */
+    private List<List<K>> scanShards(K from, K to) {
+        for (int attempt = 1; attempt < SCAN_ATTEMPTS; attempt++) {
+            List<List<K>> parts = tryScanShards(from, to);
+            if (parts != null) {
+                return parts;
+            }
+        }
+        this.rebalanceLock.lock();
+        try {
+            return tryScanShards(from, to);
+        } finally {
+            this.rebalanceLock.unlock();
+        }
+    }
+
+    /**
+     * Read every shard overlapping the range in the current layout, in parallel.
+     * Time complexity: O(s * log(n) + k) total work.
+     *
+     * @param from The lowest key to include, or null to include everything.
+     * @param to   The key to stop at, or null to include everything.
+     * @return The keys of each shard in shard order, or null if a shard was split or merged during
+     * the scan.
+     */
+    private List<List<K>> tryScanShards(K from, K to) {
+        List<Shard> selected = (from == null) ? this.shards : rangeShards(from, to);
+        List<List<K>> parts = selected.parallelStream().map(shard -> {
+            long stamp = shard.lock.readLock();
+            try {
+                if (shard.retired) {
+                    return null;
+                }
+                return (from == null) ? shard.tree.sortedKeys() : shard.tree.getRangeNodes(from, to);
+            } finally {
+                shard.lock.unlockRead(stamp);
+            }
+        }).collect(Collectors.toList());
+        return parts.contains(null) ? null : parts;
+    }
+
+    /**
+     * Time complexity: O(log(s)), where s is the number of shards.
+     *
+     * @param from The lowest key in the range (inclusive).
+     * @param to   The highest key in the range (exclusive).
+     * @return The shards which overlap the range [from, to) in the current layout.
+     */
+    private List<Shard> rangeShards(K from, K to) {
+        List<Shard> snapshot = this.shards;
+        int first = findShardIndex(snapshot, from);
+        int last = findShardIndex(snapshot, to);
+        if (last > first && snapshot.get(last).low.compareTo(to) == 0) {
+            last--;
+        }
+        return snapshot.subList(first, last + 1);
+    }
+
+    /**
+     * A shard is split once it holds more than twice its share of the keys across the maximum
+     * number of shards, so both uniform growth and skewed growth lead to new shards. Time
+     * complexity: O(c), where c is the number of counter cells.
+     *
+     * @return The number of keys at which a shard should be split.
+     */
+    private long splitThreshold() {
+        return Math.max(this.minSplitSize, 2 * this.count.sum() / this.maxShards);
+    }
+
+    /**
+     * Split the largest shard if it has outgrown the split threshold, then merge the smallest
+     * adjacent pair while there are too many shards. Only one thread rebalances at a time; others
+     * skip the check. Time complexity: O(s + m) for s shards and the m keys of the shards which are
+     * rebuilt.
+     */
+    private void rebalance() {
+        if (!this.rebalanceLock.tryLock()) {
+            return;
+        }
+        try {
+            List<Shard> current = this.shards;
+
+            // Find the most skewed shard.
+            int largest = 0;
+            int largestSize = -1;
+            for (int i = 0; i < current.size(); i++) {
+                int shardSize = sizeOf(current.get(i));
+                if (shardSize > largestSize) {
+                    largest = i;
+                    largestSize = shardSize;
+                }
+            }
+            if (largestSize < splitThreshold()) {
+                return;
+            }
+            current = replace(current, largest, 1, splitAtMedian(current.get(largest)));
+
+            // Keep the number of shards bounded by merging the smallest neighbours.
+            while (current.size() > this.maxShards) {
+                int smallest = 0;
+                int smallestSize = Integer.MAX_VALUE;
+                for (int i = 0; i + 1 < current.size(); i++) {
+                    int pairSize = sizeOf(current.get(i)) + sizeOf(current.get(i + 1));
+                    if (pairSize < smallestSize) {
+                        smallest = i;
+                        smallestSize = pairSize;
+                    }
+                }
+                current = replace(current, smallest, 2, merge(current.get(smallest), current.get(smallest + 1)));
+            }
+        } finally {
+            this.rebalanceLock.unlock();
+        }
+    }
+
+    /**
+     * Retire the shards [index, index + count) and publish a new layout with the replacements in
+     * their place. The retired shards stay write locked until the new layout is visible, so no
+     * operation can be applied to a shard after it has been copied. Time complexity: O(s).
+     *
+     * @param current      The current layout.
+     * @param index        The first shard to replace.
+     * @param count        The number of shards to replace.
+     * @param replacements A function which builds the replacement shards while the old ones are
+     *                     locked.
+     * @return The new layout.
+     */
+    private List<Shard> replace(List<Shard> current, int index, int count, Supplier<List<Shard>> replacements) {
+        long[] stamps = new long[count];
+        for (int i = 0; i < count; i++) {
+            stamps[i] = current.get(index + i).lock.writeLock();
+        }
+        try {
+            List<Shard> next = new ArrayList<>(current.subList(0, index));
+            next.addAll(replacements.get());
+            next.addAll(current.subList(index + count, current.size()));
+            for (int i = 0; i < count; i++) {
+                current.get(index + i).retired = true;
+            }
+            this.shards = next;
+            return next;
+        } finally {
+            for (int i = 0; i < count; i++) {
+                current.get(index + i).lock.unlockWrite(stamps[i]);
+            }
+        }
+    }
+
+    /**
+     * Time complexity: O(m), where m is the number of keys in the shard.
+     *
+     * @param shard The shard to split.
+     * @return A builder for two shards holding the lower and upper halves of the keys.
+     */
+    private Supplier<List<Shard>> splitAtMedian(Shard shard) {
+        return () -> {
+            List<K> keys = shard.tree.sortedKeys();
+            List<Shard> halves = new ArrayList<>();
+            if (keys.size() < 2) {
+                halves.add(new Shard(shard.low, copyOf(keys)));
+                return halves;
+            }
+            int middle = keys.size() / 2;
+            List<K> lower = keys.subList(0, middle);
+            List<K> upper = keys.subList(middle, keys.size());
+            halves.add(new Shard(shard.low, copyOf(lower)));
+            halves.add(new Shard(upper.get(0), copyOf(upper)));
+            return halves;
+        };
+    }
+
+    /**
+     * Time complexity: O(m), where m is the number of keys in both shards.
+     *
+     * @param lower The shard with the lower key range.
+     * @param upper The adjacent shard with the upper key range.
+     * @return A builder for a single shard holding the keys of both.
+     */
+    private Supplier<List<Shard>> merge(Shard lower, Shard upper) {
+        return () -> {
+            List<K> keys = lower.tree.sortedKeys();
+            keys.addAll(upper.tree.sortedKeys());
+            List<Shard> merged = new ArrayList<>();
+            merged.add(new Shard(lower.low, copyOf(keys)));
+            return merged;
+        };
+    }
+
+    /**
+     * Build the tree directly from the sorted keys rather than inserting them one at a time, as
+     * writers to the shard being replaced are blocked until it is done. Time complexity: O(m),
+     * where m is the number of keys.
+     *
+     * @param keys The sorted keys to copy, in a random access list.
+     * @return A new tree holding the keys.
+     */
+    private AVLTree<K> copyOf(List<K> keys) {
+        AVLTree<K> tree = new AVLTree<>();
+        tree.buildSorted(keys);
+        return tree;
+    }
+
+    /**
+     * Time complexity: O(1), as a constant number of references are accessed.
+     *
+     * @param shard The shard to measure.
+     * @return The number of keys in the shard, read under its lock.
+     */
+    private int sizeOf(Shard shard) {
+        long stamp = shard.lock.readLock();
+        try {
+            return shard.tree.getSize();
+        } finally {
+            shard.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Time complexity: O(log(s)), where s is the number of shards.
+     *
+     * @param layout The layout to search.
+     * @param key    The key to locate.
+     * @return The shard whose key range contains the key.
+     */
+    private Shard findShard(List<Shard> layout, K key) {
+        return layout.get(findShardIndex(layout, key));
+    }
+
+    /**
+     * Binary search for the last shard whose lower bound is not above the key. Time complexity:
+     * O(log(s)), where s is the number of shards.
+     *
+     * @param layout The layout to search.
+     * @param key    The key to locate.
+     * @return The index of the shard whose key range contains the key.
+     */
+    private int findShardIndex(List<Shard> layout, K key) {
+        int low = 1;
+        int high = layout.size() - 1;
+        int found = 0;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (layout.get(middle).low.compareTo(key) <= 0) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * A contiguous key range [low, next shard's low) backed by its own tree and lock. Space
+     * complexity: O(m), where m is the number of keys in the shard.
+     */
+    private class Shard {
+
+        private final K low;                // The lowest key of this shard, null for the first shard.
+        private final AVLTree<K> tree;      // The keys in this shard.
+        private final StampedLock lock;     // Guards the tree.
+        private boolean retired;            // True once this shard has been replaced.
+
+        /**
+         * Time complexity: O(1), as a constant number of references are accessed.
+         *
+         * @param low  The lowest key of this shard.
+         * @param tree The keys in this shard.
+         */
+        private Shard(K low, AVLTree<K> tree) {
+            this.low = low;
+            this.tree = tree;
+            this.lock = new StampedLock();
+        }
+    }
+}
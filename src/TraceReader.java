@@ -0,0 +1,181 @@
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Reads back a trace written by a TraceRecorder, one operation at a time. Space complexity: O(1),
+ * as the buffer has a fixed size.
+ *
+ * @param <K> The type of the keys.
+ * @author Aaron Mussig (https://github.com/aaronmussig)
+ */
+public class TraceReader<K> implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final InputStream in;       // The source of the trace.
+    private final KeyCodec<K> codec;    // Reads the keys.
+    private final byte[] buffer;        // Bytes read but not yet consumed.
+    private int position;               // The next byte to consume.
+    private int limit;                  // The number of bytes in the buffer.
+    private byte operation;             // The opcode of the current operation.
+    private K key;                      // The first key of the current operation.
+    private K secondKey;                // The second key of the current operation.
+
+    /**
+     * Open a trace and check its header. Time complexity: O(1).
+     *
+     * @param in    The source of the trace. It is closed when the reader is closed.
+     * @param codec Reads the keys, which must match the codec the trace was written with.
+     */
+    public TraceReader(InputStream in, KeyCodec<K> codec) {
+        this.in = in;
+        this.codec = codec;
+        this.buffer = new byte[BUFFER_SIZE];
+        this.position = 0;
+        this.limit = 0;
+        int magic = 0;
+        for (int i = 0; i < 4; i++) {
+            magic = (magic << 8) | readByte();
+        }
+        if (magic != TraceRecorder.MAGIC || readByte() != TraceRecorder.VERSION) {
+            throw new IllegalArgumentException("The stream is not a supported operation trace.");
+        }
+    }
+
+    /**
+     * Advance to the next operation. Time complexity: O(1) amortised.
+     *
+     * @return True if there was another operation, false at the end of the trace.
+     */
+    public boolean next() {
+        if (!fill()) {
+            return false;
+        }
+        this.operation = (byte) readByte();
+        this.key = null;
+        this.secondKey = null;
+        switch (this.operation) {
+            case TraceRecorder.TRAVERSE:
+                break;
+            case TraceRecorder.REMOVE_RANGE:
+                this.key = this.codec.read(this);
+                this.secondKey = this.codec.read(this);
+                break;
+            case TraceRecorder.INSERT:
+            case TraceRecorder.CONTAINS:
+            case TraceRecorder.HEAD_TRUNCATE:
+            case TraceRecorder.TAIL_TRUNCATE:
+                this.key = this.codec.read(this);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown operation " + this.operation + " in trace.");
+        }
+        return true;
+    }
+
+    /**
+     * Time complexity: O(1), as only a single variable is accessed.
+     *
+     * @return The opcode of the current operation, one of the TraceRecorder constants.
+     */
+    public byte getOperation() {
+        return this.operation;
+    }
+
+    /**
+     * Time complexity: O(1), as only a single variable is accessed.
+     *
+     * @return The key of the current operation, or the lower bound of a range removal.
+     */
+    public K getKey() {
+        return this.key;
+    }
+
+    /**
+     * Time complexity: O(1), as only a single variable is accessed.
+     *
+     * @return The upper bound of a range removal, or null for any other operation.
+     */
+    public K getSecondKey() {
+        return this.secondKey;
+    }
+
+    /**
+     * Time complexity: O(1) amortised.
+     *
+     * @return The next byte, as a value from 0 to 255.
+     */
+    public int readByte() {
+        if (!fill()) {
+            throw new UncheckedIOException(new EOFException("The trace ends part way through an operation."));
+        }
+        return this.buffer[this.position++] & 0xFF;
+    }
+
+    /**
+     * Read a zig-zag encoded variable length integer. Time complexity: O(1) amortised.
+     *
+     * @return The value.
+     */
+    public long readVarLong() {
+        long zigZag = 0;
+        int shift = 0;
+        int value;
+        do {
+            value = readByte();
+            zigZag |= (long) (value & 0x7F) << shift;
+            shift += 7;
+        } while ((value & 0x80) != 0);
+        return (zigZag >>> 1) ^ -(zigZag & 1);
+    }
+
+    /**
+     * Time complexity: O(b) where b is the number of bytes.
+     *
+     * @param length The number of bytes to read.
+     * @return The bytes.
+     */
+    public byte[] readBytes(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) readByte();
+        }
+        return bytes;
+    }
+
+    /**
+     * Time complexity: O(1), as only the source is closed.
+     */
+    @Override
+    public void close() {
+        try {
+            this.in.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Refill the buffer if it has been consumed. Time complexity: O(b) where b is the buffer size.
+     *
+     * @return True if there is at least one byte to consume, false at the end of the stream.
+     */
+    private boolean fill() {
+        try {
+            while (this.position == this.limit) {
+                this.limit = this.in.read(this.buffer, 0, this.buffer.length);
+                this.position = 0;
+                if (this.limit < 0) {
+                    this.limit = 0;
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Records the operations applied to a tree as a compact binary trace, which can later be replayed
+ * against any tree implementation with a TraceReader. Each operation is a single opcode byte
+ * followed by its keys. Operations are gathered in a fixed buffer which is only written out when
+ * it fills, so recording an operation costs a few array stores. A recorder is not thread-safe, in
+ * line with the trees it is attached to. Space complexity: O(1), as the buffer has a fixed size.
+ *
+ * @param <K> The type of the keys.
+ * @author Aaron Mussig (https://github.com/aaronmussig)
+ */
+public class TraceRecorder<K> implements Closeable {
+
+    static final int MAGIC = 0x41564c54;    // "AVLT", the first bytes of every trace.
+    static final int VERSION = 1;           // The version of the trace format.
+
+    public static final byte INSERT = 1;            // insert(key)
+    public static final byte CONTAINS = 2;          // contains(key)
+    public static final byte TRAVERSE = 3;          // getInorderNodes()
+    public static final byte REMOVE_RANGE = 4;      // removeRange(from, to)
+    public static final byte HEAD_TRUNCATE = 5;     // headTruncate(key)
+    public static final byte TAIL_TRUNCATE = 6;     // tailTruncate(key)
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final OutputStream out;         // The destination of the trace.
+    private final KeyCodec<K> codec;        // Writes the keys.
+    private final byte[] buffer;            // Bytes waiting to be written.
+    private int position;                   // The number of bytes in the buffer.
+    private long operations;                // The number of operations recorded.
+
+    /**
+     * Start a new trace, writing its header to the buffer.
+     * Time complexity: O(1), as a constant number of variables are accessed.
+     *
+     * @param out   The destination of the trace. It is closed when the recorder is closed.
+     * @param codec Writes the keys.
+     */
+    public TraceRecorder(OutputStream out, KeyCodec<K> codec) {
+        this.out = out;
+        this.codec = codec;
+        this.buffer = new byte[BUFFER_SIZE];
+        this.position = 0;
+        this.operations = 0;
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            writeByte(MAGIC >>> shift);
+        }
+        writeByte(VERSION);
+    }
+
+    /**
+     * Time complexity: O(1), as only a single variable is accessed.
+     *
+     * @return The number of operations recorded.
+     */
+    public long getOperationCount() {
+        return this.operations;
+    }
+
+    /**
+     * Time complexity: O(1) amortised.
+     *
+     * @param key The key which was inserted.
+     */
+    public void recordInsert(K key) {
+        record(INSERT, key);
+    }
+
+    /**
+     * Time complexity: O(1) amortised.
+     *
+     * @param key The key which was searched for.
+     */
+    public void recordContains(K key) {
+        record(CONTAINS, key);
+    }
+
+    /**
+     * Time complexity: O(1) amortised.
+     */
+    public void recordTraversal() {
+        writeByte(TRAVERSE);
+        this.operations++;
+    }
+
+    /**
+     * Time complexity: O(1) amortised.
+     *
+     * @param from The lowest key removed (inclusive).
+     * @param to   The key removal stopped at (exclusive).
+     */
+    public void recordRemoveRange(K from, K to) {
+        record(REMOVE_RANGE, from);
+        this.codec.write(to, this);
+    }
+
+    /**
+     * Time complexity: O(1) amortised.
+     *
+     * @param key The lowest key kept.
+     */
+    public void recordHeadTruncate(K key) {
+        record(HEAD_TRUNCATE, key);
+    }
+
+    /**
+     * Time complexity: O(1) amortised.
+     *
+     * @param key The lowest key removed.
+     */
+    public void recordTailTruncate(K key) {
+        record(TAIL_TRUNCATE, key);
+    }
+
+    /**
+     * Time complexity: O(1) amortised.
+     *
+     * @param operation The opcode.
+     * @param key       The key of the operation.
+     */
+    private void record(byte operation, K key) {
+        writeByte(operation);
+        this.codec.write(key, this);
+        this.operations++;
+    }
+
+    /**
+     * Time complexity: O(1) amortised.
+     *
+     * @param value The byte to write, in the low 8 bits.
+     */
+    public void writeByte(int value) {
+        if (this.position == this.buffer.length) {
+            drain();
+        }
+        this.buffer[this.position++] = (byte) value;
+    }
+
+    /**
+     * Write a zig-zag encoded variable length integer: seven bits per byte, low bits first, with the
+     * high bit set on every byte but the last. Time complexity: O(1) amortised.
+     *
+     * @param value The value to write.
+     */
+    public void writeVarLong(long value) {
+        long zigZag = (value << 1) ^ (value >> 63);
+        while ((zigZag & ~0x7FL) != 0) {
+            writeByte((int) ((zigZag & 0x7F) | 0x80));
+            zigZag >>>= 7;
+        }
+        writeByte((int) zigZag);
+    }
+
+    /**
+     * Time complexity: O(b) where b is the number of bytes.
+     *
+     * @param bytes The bytes to write.
+     */
+    public void writeBytes(byte[] bytes) {
+        for (byte value : bytes) {
+            writeByte(value);
+        }
+    }
+
+    /**
+     * Write out the buffered part of the trace. Time complexity: O(b) where b is the buffer size.
+     */
+    public void flush() {
+        drain();
+        try {
+            this.out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Flush the trace and close its destination. Time complexity: O(b) where b is the buffer size.
+     */
+    @Override
+    public void close() {
+        flush();
+        try {
+            this.out.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Time complexity: O(b) where b is the buffer size.
+     */
+    private void drain() {
+        try {
+            this.out.write(this.buffer, 0, this.position);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.position = 0;
+    }
+}
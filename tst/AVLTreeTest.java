@@ -1,7 +1,10 @@
+import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.TreeSet;
 import org.junit.Test;
 
 import static org.junit.Assert.*;
@@ -326,13 +329,303 @@ public class AVLTreeTest {
 
     }
 
+    @Test
+    public void removeRangeTest() {
+        AVLTree<Integer> avlTree = new AVLTree<>();
+        for (int i = 0; i < 100; i++) {
+            avlTree.insert(i);
+        }
 
+        assertEquals(20, avlTree.removeRange(40, 60));
+        assertEquals(80, avlTree.getSize());
+        assertFalse(avlTree.contains(40));
+        assertFalse(avlTree.contains(59));
+        assertTrue(avlTree.contains(39));
+        assertTrue(avlTree.contains(60));
+        assertBalanced(avlTree.root);
 
+        // Empty and inverted ranges remove nothing.
+        assertEquals(0, avlTree.removeRange(40, 60));
+        assertEquals(0, avlTree.removeRange(70, 70));
+        assertEquals(0, avlTree.removeRange(80, 70));
 
+        // Inserting after a removal still balances.
+        avlTree.insert(50);
+        assertEquals(81, avlTree.getSize());
+        assertTrue(avlTree.contains(50));
+        assertBalanced(avlTree.root);
+    }
 
+    @Test
+    public void truncateTest() {
+        AVLTree<Integer> avlTree = new AVLTree<>();
+        for (int i = 0; i < 1000; i++) {
+            avlTree.insert(i);
+        }
 
+        assertEquals(100, avlTree.headTruncate(100));
+        assertEquals(100, (int) avlTree.getInorderNodes().get(0));
+        assertBalanced(avlTree.root);
 
+        assertEquals(100, avlTree.tailTruncate(900));
+        assertEquals(800, avlTree.getSize());
+        assertEquals(899, (int) avlTree.getInorderNodes().get(799));
+        assertBalanced(avlTree.root);
 
+        assertEquals(0, avlTree.headTruncate(0));
+        assertEquals(800, avlTree.tailTruncate(0));
+        assertEquals(0, avlTree.getSize());
+        assertNull(avlTree.root);
+        assertEquals(0, avlTree.headTruncate(10));
+    }
 
+    @Test
+    public void removeRangeTestRandom() {
+        TreeSet<Integer> expected = new TreeSet<>();
+        AVLTree<Integer> avlTree = new AVLTree<>();
+        Random rng = new Random(1);
+
+        // Interleave insertions with removals of random ranges.
+        for (int round = 0; round < 200; round++) {
+            for (int i = 0; i < 500; i++) {
+                int key = rng.nextInt(100000);
+                avlTree.insert(key);
+                expected.add(key);
+            }
+            int from = rng.nextInt(100000);
+            int to = from + rng.nextInt(20000);
+            int removed = expected.subSet(from, to).size();
+            expected.subSet(from, to).clear();
+
+            assertEquals(removed, avlTree.removeRange(from, to));
+            assertEquals(expected.size(), avlTree.getSize());
+            assertBalanced(avlTree.root);
+        }
+        assertEquals(new ArrayList<>(expected), avlTree.getInorderNodes());
+    }
+
+    /**
+     * @return The height of the subtree, after checking every node in it is balanced.
+     */
+    private int assertBalanced(AVLTree<Integer>.AVLNode node) {
+        if (node == null) {
+            return 0;
+        }
+        int left = assertBalanced(node.getLeft());
+        int right = assertBalanced(node.getRight());
+        assertTrue(Math.abs(left - right) <= 1);
+        assertEquals(1 + countKeys(node.getLeft()) + countKeys(node.getRight()), countKeys(node));
+        return Math.max(left, right) + 1;
+    }
 
-}
\ No newline at end of file
+    /**
+     * @return The subtree key count stored at the node, or 0 for an empty subtree.
+     */
+    private int countKeys(AVLTree<Integer>.AVLNode node) {
+        return (node == null) ? 0 : node.getCount();
+    }
+
+    @Test
+    public void buildSortedTest() {
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            keys.add(2 * i);
+        }
+        AVLTree<Integer> avlTree = new AVLTree<>();
+        avlTree.insert(-1);
+        avlTree.buildSorted(keys);
+
+        assertEquals(1000, avlTree.getSize());
+        assertEquals(keys, avlTree.sortedKeys());
+        assertEquals(10, avlTree.getFootprint().getHeight());
+        assertBalanced(avlTree.root);
+
+        // The built tree supports every later operation.
+        avlTree.insert(1);
+        assertEquals(996, avlTree.removeRange(3, 1995));
+        assertEquals(Arrays.asList(0, 1, 2, 1996, 1998), avlTree.getInorderNodes());
+    }
+
+    @Test
+    public void footprintTest() {
+        AVLTree<Integer> avlTree = new AVLTree<>();
+        assertEquals(0, avlTree.getFootprint().getTotalBytes());
+
+        for (int i = 0; i < 1000; i++) {
+            avlTree.insert(i);
+        }
+        avlTree.insert(0);
+
+        // 40 byte nodes holding 16 byte Integers.
+        Footprint footprint = avlTree.getFootprint();
+        assertEquals(1000, footprint.getNodeCount());
+        assertEquals(10, footprint.getHeight());
+        assertEquals(40 * 1000, footprint.getStructureBytes());
+        assertEquals(16 * 1000, footprint.getKeyBytes());
+        assertEquals(56.0, footprint.getBytesPerEntry(), 1e-9);
+
+        avlTree.removeRange(0, 500);
+        assertEquals(40 * 500, avlTree.getFootprint().getStructureBytes());
+        assertEquals(16 * 500, avlTree.getFootprint().getKeyBytes());
+
+        avlTree.setKeySizer(key -> 4);
+        assertEquals(4 * 500, avlTree.getFootprint().getKeyBytes());
+    }
+
+    @Test
+    public void footprintTestKeys() {
+        assertEquals(16, Footprint.estimateKeyBytes(1));
+        assertEquals(24, Footprint.estimateKeyBytes(1L));
+        assertEquals(24 + 24, Footprint.estimateKeyBytes("abcdefgh"));
+        assertEquals(24 + 32, Footprint.estimateKeyBytes("abcdefghi"));
+    }
+
+    @Test
+    public void filterTest() {
+        AVLTree<Integer> avlTree = new AVLTree<>();
+        assertNull(avlTree.getFilterStats());
+        for (int i = 0; i < 100; i += 2) {
+            avlTree.insert(i);
+        }
+        avlTree.enableFilter(0.01);
+
+        // Grow well past the initial capacity, so the filter is resized.
+        for (int i = 100; i < 20000; i += 2) {
+            avlTree.insert(i);
+        }
+        for (int i = 0; i < 20000; i++) {
+            assertEquals(i % 2 == 0, avlTree.contains(i));
+        }
+
+        FilterStats stats = avlTree.getFilterStats();
+        assertTrue(stats.getRebuilds() > 0);
+        assertTrue(stats.getCapacity() >= avlTree.getSize());
+        assertEquals(20000, stats.getQueries());
+        assertEquals(10000, stats.getRejections() + stats.getFalsePositives());
+        assertTrue(stats.getFalsePositiveRate() < 0.02);
+
+        avlTree.disableFilter();
+        assertNull(avlTree.getFilterStats());
+        assertTrue(avlTree.contains(0));
+    }
+
+    @Test
+    public void filterTestRemoval() {
+        AVLTree<String> avlTree = new AVLTree<>();
+        avlTree.enableFilter(0.01);
+        for (int i = 0; i < 10000; i++) {
+            avlTree.insert(String.format("%05d", i));
+        }
+        int rebuilds = avlTree.getFilterStats().getRebuilds();
+
+        // Removed keys must not be reported, even while the filter still holds them.
+        avlTree.removeRange("01000", "02000");
+        assertEquals(rebuilds, avlTree.getFilterStats().getRebuilds());
+        assertFalse(avlTree.contains("01500"));
+        assertTrue(avlTree.contains("02000"));
+
+        // Once most of the filter is stale it is rebuilt from the remaining keys.
+        avlTree.headTruncate("08000");
+        assertEquals(rebuilds + 1, avlTree.getFilterStats().getRebuilds());
+        assertEquals(2000, avlTree.getFilterStats().getEntries());
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(i >= 8000, avlTree.contains(String.format("%05d", i)));
+        }
+        avlTree.tailTruncate("");
+        assertEquals(0, avlTree.getSize());
+        assertFalse(avlTree.contains("09000"));
+    }
+
+    @Test
+    public void filterTestFootprint() {
+        AVLTree<Integer> avlTree = new AVLTree<>();
+        for (int i = 0; i < 1000; i++) {
+            avlTree.insert(i);
+        }
+        long structureBytes = avlTree.getFootprint().getStructureBytes();
+        avlTree.enableFilter(0.01);
+
+        // About 9.6 bits per key at 1%, rounded up to a power of two for 2000 keys.
+        long filterBytes = avlTree.getFootprint().getStructureBytes() - structureBytes;
+        assertEquals(32768, avlTree.getFilterStats().getBitCount());
+        assertTrue(filterBytes > 32768 / 8 && filterBytes < 32768 / 8 + 128);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void filterTestRate() {
+        new AVLTree<Integer>().enableFilter(1.0);
+    }
+
+    @Test
+    public void filterTestKeyHash() {
+        // 1.0 and 1.00 are equal by compareTo but not by hashCode, so need a hash which agrees.
+        AVLTree<BigDecimal> avlTree = new AVLTree<>();
+        avlTree.insert(new BigDecimal("1.0"));
+        avlTree.enableFilter(0.01, key -> key.stripTrailingZeros().hashCode());
+        avlTree.insert(new BigDecimal("2.50"));
+        assertTrue(avlTree.contains(new BigDecimal("1.00")));
+        assertTrue(avlTree.contains(new BigDecimal("2.5")));
+        assertFalse(avlTree.contains(new BigDecimal("3")));
+    }
+
+    @Test
+    public void filterTestUnsupportedKey() {
+        AVLTree<BigDecimal> avlTree = new AVLTree<>();
+        avlTree.enableFilter(0.01);
+        try {
+            avlTree.insert(BigDecimal.ONE);
+            fail("BigDecimal keys cannot be hashed by default.");
+        } catch (IllegalArgumentException e) {
+            // The tree is left as it was before the insert.
+        }
+        assertEquals(0, avlTree.getSize());
+        assertTrue(avlTree.getInorderNodes().isEmpty());
+        assertEquals(0, avlTree.getFilterStats().getEntries());
+
+        // A failed enable leaves the tree searchable without a filter.
+        avlTree.disableFilter();
+        avlTree.insert(BigDecimal.ONE);
+        try {
+            avlTree.enableFilter(0.01);
+            fail("BigDecimal keys cannot be hashed by default.");
+        } catch (IllegalArgumentException e) {
+            // The filter is not put in place.
+        }
+        assertNull(avlTree.getFilterStats());
+        assertTrue(avlTree.contains(BigDecimal.ONE));
+    }
+
+    @Test
+    public void truncateTestKeysNotVisited() {
+        AVLTree<Integer> avlTree = new AVLTree<>();
+        for (int i = 0; i < 100000; i++) {
+            avlTree.insert(i);
+        }
+
+        // Keys of one size are accounted for from the subtree counts, without visiting them.
+        int[] sized = new int[1];
+        avlTree.setKeySizer(key -> {
+            sized[0]++;
+            return 16;
+        });
+        sized[0] = 0;
+        assertEquals(90000, avlTree.headTruncate(90000));
+        assertEquals(5000, avlTree.removeRange(92000, 97000));
+        assertEquals(1000, avlTree.tailTruncate(99000));
+        assertEquals(0, sized[0]);
+        assertEquals(4000, avlTree.getSize());
+        assertEquals(16 * 4000, avlTree.getFootprint().getKeyBytes());
+
+        // Keys of differing sizes are still subtracted one by one.
+        AVLTree<String> strings = new AVLTree<>();
+        for (int i = 0; i < 1000; i++) {
+            strings.insert(Integer.toString(i));
+        }
+        strings.headTruncate("5");
+        long expected = 0;
+        for (String key : strings.getInorderNodes()) {
+            expected += Footprint.estimateKeyBytes(key);
+        }
+        assertEquals(expected, strings.getFootprint().getKeyBytes());
+    }
+}
@@ -0,0 +1,120 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AggregateAVLTreeTest {
+
+    private static final AggregateAVLTree.Aggregator<Integer, Long> SUM =
+            new AggregateAVLTree.Aggregator<Integer, Long>() {
+                @Override
+                public Long identity() {
+                    return 0L;
+                }
+
+                @Override
+                public Long lift(Integer key) {
+                    return (long) key;
+                }
+
+                @Override
+                public Long combine(Long left, Long right) {
+                    return left + right;
+                }
+            };
+
+    // Concatenation is associative but not commutative, so this checks summaries stay in key order.
+    private static final AggregateAVLTree.Aggregator<Integer, String> CONCAT =
+            new AggregateAVLTree.Aggregator<Integer, String>() {
+                @Override
+                public String identity() {
+                    return "";
+                }
+
+                @Override
+                public String lift(Integer key) {
+                    return key + ",";
+                }
+
+                @Override
+                public String combine(String left, String right) {
+                    return left + right;
+                }
+            };
+
+    @Test
+    public void aggregateTestEmpty() {
+        AggregateAVLTree<Integer, Long> avlTree = new AggregateAVLTree<>(SUM);
+        assertEquals(0L, (long) avlTree.aggregate());
+        assertEquals(0L, (long) avlTree.aggregate(0, 100));
+    }
+
+    @Test
+    public void aggregateTestRotations() {
+        AggregateAVLTree<Integer, String> avlTree = new AggregateAVLTree<>(CONCAT);
+
+        // The same sequence as balanceTest, covering every rotation.
+        int[] keys = {100, 200, 300, 50, 25, 75, 250};
+        for (int key : keys) {
+            avlTree.insert(key);
+        }
+
+        assertEquals("25,50,75,100,200,250,300,", avlTree.aggregate());
+        assertEquals("50,75,100,", avlTree.aggregate(50, 200));
+        assertEquals("75,100,200,", avlTree.aggregate(51, 201));
+        assertEquals("300,", avlTree.aggregate(300, 1000));
+        assertEquals("", avlTree.aggregate(101, 199));
+        assertEquals("", avlTree.aggregate(200, 200));
+    }
+
+    @Test
+    public void aggregateTestRandom() {
+        AggregateAVLTree<Integer, Long> avlTree = new AggregateAVLTree<>(SUM);
+        List<Integer> expected = new ArrayList<>();
+        Random rng = new Random(1);
+        for (int i = 0; i < 5000; i++) {
+            int key = rng.nextInt(100000);
+            avlTree.insert(key);
+            if (!expected.contains(key)) {
+                expected.add(key);
+            }
+        }
+        Collections.sort(expected);
+
+        for (int i = 0; i < 500; i++) {
+            int from = rng.nextInt(110000) - 5000;
+            int to = from + rng.nextInt(50000);
+            long sum = 0;
+            for (int key : expected) {
+                if (key >= from && key < to) {
+                    sum += key;
+                }
+            }
+            assertEquals(sum, (long) avlTree.aggregate(from, to));
+        }
+    }
+
+    @Test
+    public void aggregateTestRemoveRange() {
+        AggregateAVLTree<Integer, Long> avlTree = new AggregateAVLTree<>(SUM);
+        for (int i = 1; i <= 1000; i++) {
+            avlTree.insert(i);
+        }
+
+        // Summaries must survive the splits and joins.
+        avlTree.removeRange(101, 901);
+        avlTree.headTruncate(11);
+        long expected = 0;
+        for (int i = 11; i <= 100; i++) {
+            expected += i;
+        }
+        for (int i = 901; i <= 1000; i++) {
+            expected += i;
+        }
+        assertEquals(expected, (long) avlTree.aggregate());
+        assertEquals(901L + 902L, (long) avlTree.aggregate(101, 903));
+    }
+}
@@ -0,0 +1,278 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BlockAVLTreeTest {
+
+    @Test
+    public void insertTestSplit() {
+        BlockAVLTree<Integer> tree = new BlockAVLTree<>(4);
+        for (int i = 0; i < 4; i++) {
+            tree.insert(i);
+        }
+        assertEquals(1, tree.getBlockCount());
+
+        // The fifth key overflows the root block.
+        tree.insert(4);
+        assertEquals(2, tree.getBlockCount());
+        assertEquals(5, tree.getSize());
+        assertEquals("[0|1|2|3|4]", tree.toString());
+
+        // Duplicates are ignored, whichever block holds them.
+        tree.insert(0);
+        tree.insert(4);
+        assertEquals(5, tree.getSize());
+    }
+
+    @Test
+    public void insertTestRightHeavy() {
+        BlockAVLTree<Integer> tree = new BlockAVLTree<>(4);
+        for (int i = 0; i < 100000; i++) {
+            tree.insert(i);
+        }
+        assertEquals(100000, tree.getSize());
+        assertBalanced(tree.root);
+
+        int i = 0;
+        for (int x : tree.getInorderNodes()) {
+            assertEquals(i, x);
+            i++;
+        }
+    }
+
+    @Test
+    public void insertTestLeftHeavy() {
+        BlockAVLTree<Integer> tree = new BlockAVLTree<>(16);
+        for (int i = 100000; i >= 0; i--) {
+            tree.insert(i);
+        }
+        assertEquals(100001, tree.getSize());
+        assertBalanced(tree.root);
+
+        int i = 0;
+        for (int x : tree.getInorderNodes()) {
+            assertEquals(i, x);
+            i++;
+        }
+    }
+
+    @Test
+    public void insertTestRandom() {
+        TreeSet<Integer> expected = new TreeSet<>();
+        BlockAVLTree<Integer> tree = new BlockAVLTree<>();
+        Random rng = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            int key = rng.nextInt(200000);
+            tree.insert(key);
+            expected.add(key);
+        }
+
+        assertEquals(expected.size(), tree.getSize());
+        assertBalanced(tree.root);
+        assertEquals(new ArrayList<>(expected), tree.getInorderNodes());
+        for (int i = 0; i < 200000; i += 7) {
+            assertEquals(expected.contains(i), tree.contains(i));
+        }
+    }
+
+    @Test
+    public void removeTest() {
+        BlockAVLTree<Integer> tree = new BlockAVLTree<>(8);
+        for (int i = 0; i < 100; i++) {
+            tree.insert(i);
+        }
+        assertFalse(tree.remove(100));
+        assertTrue(tree.remove(50));
+        assertFalse(tree.remove(50));
+        assertFalse(tree.contains(50));
+        assertEquals(99, tree.getSize());
+
+        // Emptying the tree merges every block away.
+        for (int i = 0; i < 100; i++) {
+            tree.remove(i);
+            assertBlocks(tree);
+        }
+        assertEquals(0, tree.getSize());
+        assertEquals(0, tree.getBlockCount());
+        assertEquals(0, tree.getFootprint().getTotalBytes());
+        tree.insert(1);
+        assertEquals("[1]", tree.toString());
+    }
+
+    @Test
+    public void removeTestRandom() {
+        TreeSet<Integer> expected = new TreeSet<>();
+        BlockAVLTree<Integer> tree = new BlockAVLTree<>(16);
+        Random rng = new Random(2);
+        for (int i = 0; i < 200000; i++) {
+            int key = rng.nextInt(20000);
+            if (rng.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), tree.remove(key));
+            } else {
+                tree.insert(key);
+                expected.add(key);
+            }
+        }
+        assertEquals(expected.size(), tree.getSize());
+        assertEquals(new ArrayList<>(expected), tree.getInorderNodes());
+        assertBlocks(tree);
+    }
+
+    @Test
+    public void removeRangeTest() {
+        BlockAVLTree<Integer> tree = new BlockAVLTree<>(4);
+        for (int i = 0; i < 1000; i++) {
+            tree.insert(i);
+        }
+        assertEquals(0, tree.removeRange(500, 500));
+        assertEquals(398, tree.removeRange(101, 499));
+        assertEquals(Arrays.asList(99, 100, 499, 500), tree.getInorderNodes().subList(99, 103));
+        assertBlocks(tree);
+
+        assertEquals(101 + 152, tree.headTruncate(651));
+        assertEquals(Integer.valueOf(651), tree.getInorderNodes().get(0));
+        assertEquals(49, tree.tailTruncate(951));
+        assertEquals(Integer.valueOf(950), tree.getInorderNodes().get(299));
+        assertEquals(300, tree.getSize());
+        assertBlocks(tree);
+
+        assertEquals(300, tree.tailTruncate(0));
+        assertEquals(0, tree.getBlockCount());
+    }
+
+    @Test
+    public void removeRangeTestRandom() {
+        Random rng = new Random(3);
+        for (int capacity : new int[]{2, 3, 32}) {
+            TreeSet<Integer> expected = new TreeSet<>();
+            BlockAVLTree<Integer> tree = new BlockAVLTree<>(capacity);
+            for (int round = 0; round < 300; round++) {
+                for (int i = 0; i < 200; i++) {
+                    int key = rng.nextInt(10000);
+                    tree.insert(key);
+                    expected.add(key);
+                }
+                int from = rng.nextInt(10000);
+                int to = from + rng.nextInt(500);
+                int removed;
+                switch (round % 3) {
+                    case 0:
+                        removed = tree.removeRange(from, to);
+                        assertEquals(expected.subSet(from, to).size(), removed);
+                        expected.subSet(from, to).clear();
+                        break;
+                    case 1:
+                        removed = tree.headTruncate(from / 10);
+                        assertEquals(expected.headSet(from / 10).size(), removed);
+                        expected.headSet(from / 10).clear();
+                        break;
+                    default:
+                        removed = tree.tailTruncate(9000 + from / 10);
+                        assertEquals(expected.tailSet(9000 + from / 10).size(), removed);
+                        expected.tailSet(9000 + from / 10).clear();
+                }
+                assertEquals(expected.size(), tree.getSize());
+                assertBlocks(tree);
+            }
+            assertEquals(new ArrayList<>(expected), tree.getInorderNodes());
+        }
+    }
+
+    @Test
+    public void truncateTestKeysNotVisited() {
+        BlockAVLTree<Integer> tree = new BlockAVLTree<>(16);
+        for (int i = 0; i < 100000; i++) {
+            tree.insert(i);
+        }
+
+        // Keys of one size are accounted for from the subtree totals, without visiting them.
+        int[] sized = new int[1];
+        tree.setKeySizer(key -> {
+            sized[0]++;
+            return 16;
+        });
+        sized[0] = 0;
+        assertEquals(90000, tree.headTruncate(90000));
+        assertEquals(5000, tree.removeRange(92000, 97000));
+        assertEquals(1000, tree.tailTruncate(99000));
+        assertEquals(0, sized[0]);
+        assertEquals(4000, tree.getSize());
+        assertBlocks(tree);
+
+        // Keys of differing sizes are still subtracted one by one.
+        BlockAVLTree<String> strings = new BlockAVLTree<>(4);
+        for (int i = 0; i < 1000; i++) {
+            strings.insert(Integer.toString(i));
+        }
+        strings.headTruncate("5");
+        long expected = 0;
+        for (String key : strings.getInorderNodes()) {
+            expected += Footprint.estimateKeyBytes(key);
+        }
+        assertEquals(expected, strings.getFootprint().getKeyBytes());
+    }
+
+    /**
+     * Check the tree is balanced, every block other than a lone root holds at least a quarter of
+     * its capacity, and the block count and footprint agree with the blocks found.
+     */
+    private void assertBlocks(BlockAVLTree<Integer> tree) {
+        assertBalanced(tree.root);
+        int minimum = (tree.getBlockCount() > 1) ? Math.max(1, tree.getBlockCapacity() / 4) : 1;
+        int blocks = countBlocks(tree.root, minimum);
+        assertEquals(blocks, tree.getBlockCount());
+        assertEquals(tree.getSize(), (tree.root == null) ? 0 : tree.root.getTotal());
+        assertEquals(16L * tree.getSize(), tree.getFootprint().getKeyBytes());
+    }
+
+    /**
+     * @return The number of blocks in the subtree, after checking each holds the minimum.
+     */
+    private int countBlocks(BlockAVLTree<Integer>.BlockNode node, int minimum) {
+        if (node == null) {
+            return 0;
+        }
+        assertTrue(node.getCount() >= minimum);
+        return countBlocks(node.getLeft(), minimum) + 1 + countBlocks(node.getRight(), minimum);
+    }
+
+    /**
+     * @return The height of the subtree, after checking every node in it is balanced.
+     */
+    private int assertBalanced(BlockAVLTree<Integer>.BlockNode node) {
+        if (node == null) {
+            return 0;
+        }
+        int left = assertBalanced(node.getLeft());
+        int right = assertBalanced(node.getRight());
+        assertTrue(Math.abs(left - right) <= 1);
+        assertEquals(node.getCount() + totalOf(node.getLeft()) + totalOf(node.getRight()), node.getTotal());
+        return Math.max(left, right) + 1;
+    }
+
+    /**
+     * @return The number of keys in the subtree, as recorded by its root.
+     */
+    private int totalOf(BlockAVLTree<Integer>.BlockNode node) {
+        return (node == null) ? 0 : node.getTotal();
+    }
+
+    @Test
+    public void footprintTest() {
+        BlockAVLTree<Integer> tree = new BlockAVLTree<>(16);
+        for (int i = 0; i < 1000; i++) {
+            tree.insert(i);
+        }
+
+        // 48 byte nodes each with a 16 reference array, holding 16 byte Integers.
+        Footprint footprint = tree.getFootprint();
+        assertEquals(1000, footprint.getKeyCount());
+        assertEquals(tree.getBlockCount(), footprint.getNodeCount());
+        assertEquals(tree.getBlockCount() * (48 + 80), footprint.getStructureBytes());
+        assertEquals(16 * 1000, footprint.getKeyBytes());
+    }
+}
@@ -0,0 +1,196 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CombiningAVLTreeTest {
+
+    @Test
+    public void insertTestSingleThread() {
+        CombiningAVLTree<Integer> tree = new CombiningAVLTree<>();
+        for (int i = 1000; i >= 0; i--) {
+            tree.insert(i);
+        }
+
+        assertEquals(1001, tree.getSize());
+        assertTrue(tree.contains(0));
+        assertTrue(tree.contains(1000));
+        assertFalse(tree.contains(1001));
+
+        int i = 0;
+        for (int x : tree.getInorderNodes()) {
+            assertEquals(i, x);
+            i++;
+        }
+    }
+
+    @Test
+    public void insertTestFutures() {
+        CombiningAVLTree<Integer> tree = new CombiningAVLTree<>();
+        CompletableFuture<Boolean> first = tree.insertAsync(5);
+        CompletableFuture<Boolean> duplicate = tree.insertAsync(5);
+        CompletableFuture<Boolean> found = tree.containsAsync(5);
+        CompletableFuture<Boolean> missing = tree.containsAsync(6);
+
+        assertTrue(first.join());
+        assertFalse(duplicate.join());
+        assertTrue(found.join());
+        assertFalse(missing.join());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void insertTestNull() {
+        new CombiningAVLTree<Integer>().insertAsync(null);
+    }
+
+    @Test
+    public void insertTestFailureIsolated() throws Exception {
+        CombiningAVLTree<Key> tree = new CombiningAVLTree<>();
+        tree.insert(new Key(0, false));
+
+        // Hold the combiner inside a comparison, so the following operations queue as one batch.
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> combiner = executor.submit(() -> tree.insert(new Key(10, entered, release)));
+        entered.await();
+        CompletableFuture<Boolean> valid = tree.insertAsync(new Key(5, false));
+        CompletableFuture<Boolean> invalid = tree.insertAsync(new Key(7, true));
+        CompletableFuture<Boolean> found = tree.containsAsync(new Key(5, false));
+        assertFalse(valid.isDone());
+
+        release.countDown();
+        combiner.get();
+        executor.shutdown();
+
+        // Only the operation with the bad key fails.
+        assertTrue(invalid.isCompletedExceptionally());
+        assertTrue(valid.join());
+        assertTrue(found.join());
+        assertEquals(3, tree.getSize());
+    }
+
+    @Test
+    public void insertTestConcurrent() throws Exception {
+        CombiningAVLTree<Integer> tree = new CombiningAVLTree<>();
+        int threads = 16;
+        int perThread = 10000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<TreeSet<Integer>>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Random rng = new Random(t);
+            workers.add(executor.submit(() -> {
+                // Publish every insert without waiting, so batches mix the keys of all workers.
+                TreeSet<Integer> keys = new TreeSet<>();
+                List<CompletableFuture<Boolean>> pending = new ArrayList<>();
+                for (int i = 0; i < perThread; i++) {
+                    int key = rng.nextInt(1000000);
+                    keys.add(key);
+                    pending.add(tree.insertAsync(key));
+                }
+                for (CompletableFuture<Boolean> insert : pending) {
+                    insert.join();
+                }
+
+                // Every completed insert must be visible to its writer.
+                for (int key : keys) {
+                    assertTrue(tree.contains(key));
+                }
+                return keys;
+            }));
+        }
+        executor.shutdown();
+
+        // Rethrows any assertion failure from a worker on the test thread.
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (Future<TreeSet<Integer>> worker : workers) {
+            expected.addAll(worker.get());
+        }
+        assertEquals(expected.size(), tree.getSize());
+        assertEquals(new ArrayList<>(expected), tree.getInorderNodes());
+    }
+
+    @Test
+    public void insertTestBoundedCombiner() throws Exception {
+        CombiningAVLTree<Integer> tree = new CombiningAVLTree<>();
+        AtomicBoolean stop = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        // Publish without waiting for as long as the test runs, so the queue is never empty.
+        Future<List<CompletableFuture<Boolean>>> publisher = executor.submit(() -> {
+            List<CompletableFuture<Boolean>> published = new ArrayList<>();
+            for (int i = 0; !stop.get() && i < 5000000; i++) {
+                published.add(tree.insertAsync(i));
+            }
+            return published;
+        });
+        while (tree.getSize() == 0) {
+            Thread.yield();
+        }
+
+        // A caller which becomes the combiner still returns while the publisher keeps going.
+        Future<?> caller = executor.submit(() -> tree.insert(-1));
+        caller.get(10, TimeUnit.SECONDS);
+        assertFalse(publisher.isDone());
+        stop.set(true);
+
+        // Every published operation is applied, even those no combiner drained before returning.
+        List<CompletableFuture<Boolean>> published = publisher.get();
+        for (CompletableFuture<Boolean> insert : published) {
+            assertTrue(insert.join());
+        }
+        executor.shutdown();
+        assertEquals(published.size() + 1, tree.getSize());
+    }
+
+    /**
+     * A key which can block its first comparison, or fail every comparison.
+     */
+    private static class Key implements Comparable<Key> {
+
+        private final int value;                // The value to order by.
+        private final boolean failing;          // True if every comparison throws.
+        private final CountDownLatch entered;   // Counted down when a comparison starts, or null.
+        private final CountDownLatch release;   // Awaited before the comparison completes, or null.
+
+        private Key(int value, boolean failing) {
+            this.value = value;
+            this.failing = failing;
+            this.entered = null;
+            this.release = null;
+        }
+
+        private Key(int value, CountDownLatch entered, CountDownLatch release) {
+            this.value = value;
+            this.failing = false;
+            this.entered = entered;
+            this.release = release;
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            if (this.failing || other.failing) {
+                throw new IllegalStateException("Key " + this.value + " cannot be compared");
+            }
+            if (this.entered != null) {
+                this.entered.countDown();
+                try {
+                    this.release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return Integer.compare(this.value, other.value);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MerkleAVLTreeTest {
+
+    /**
+     * An in-process stand-in for a network channel, which copies every answer and counts the
+     * number of requests made.
+     */
+    private static class CountingChannel implements MerkleDigest<Integer> {
+
+        private final MerkleDigest<Integer> replica;
+        private int requests;
+
+        private CountingChannel(MerkleDigest<Integer> replica) {
+            this.replica = replica;
+        }
+
+        @Override
+        public RangeDigest digest(Integer low, Integer high) {
+            this.requests++;
+            RangeDigest answer = this.replica.digest(low, high);
+            return new RangeDigest(answer.getHash(), answer.getCount());
+        }
+
+        @Override
+        public RangeDigest[] digestSplit(Integer low, Integer pivot, Integer high) {
+            this.requests++;
+            RangeDigest[] answer = this.replica.digestSplit(low, pivot, high);
+            return new RangeDigest[]{new RangeDigest(answer[0].getHash(), answer[0].getCount()),
+                    new RangeDigest(answer[1].getHash(), answer[1].getCount())};
+        }
+
+        @Override
+        public List<Integer> keys(Integer low, Integer high) {
+            this.requests++;
+            return new ArrayList<>(this.replica.keys(low, high));
+        }
+    }
+
+    @Test
+    public void hashTestInsertionOrder() {
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            keys.add(i * 3);
+        }
+        MerkleAVLTree<Integer> ascending = new MerkleAVLTree<>();
+        for (int key : keys) {
+            ascending.insert(key);
+        }
+        Collections.shuffle(keys, new Random(1));
+        MerkleAVLTree<Integer> shuffled = new MerkleAVLTree<>();
+        for (int key : keys) {
+            shuffled.insert(key);
+        }
+
+        // Different shapes, same keys.
+        assertEquals(ascending.getRootHash(), shuffled.getRootHash());
+        assertEquals(ascending.digest(100, 2000), shuffled.digest(100, 2000));
+        assertEquals(633, shuffled.digest(100, 2000).getCount());
+        assertTrue(ascending.diff(shuffled).isEmpty());
+
+        shuffled.insert(1);
+        assertNotEquals(ascending.getRootHash(), shuffled.getRootHash());
+    }
+
+    @Test
+    public void diffTestBothSides() {
+        MerkleAVLTree<Integer> local = new MerkleAVLTree<>();
+        MerkleAVLTree<Integer> remote = new MerkleAVLTree<>();
+        for (int i = 0; i < 100; i++) {
+            local.insert(i);
+            remote.insert(i);
+        }
+        local.insert(1000);
+        local.insert(-5);
+        remote.insert(50000);
+        remote.insert(42000);
+
+        MerkleAVLTree.Diff<Integer> diff = local.diff(remote);
+        assertEquals(Arrays.asList(-5, 1000), diff.getMissingRemotely());
+        assertEquals(Arrays.asList(42000, 50000), diff.getMissingLocally());
+
+        // Empty trees on either side.
+        MerkleAVLTree<Integer> empty = new MerkleAVLTree<>();
+        assertEquals(102, empty.diff(local).getMissingLocally().size());
+        assertEquals(102, local.diff(empty).getMissingRemotely().size());
+    }
+
+    @Test
+    public void diffTestRemoveRange() {
+        MerkleAVLTree<Integer> local = new MerkleAVLTree<>();
+        MerkleAVLTree<Integer> remote = new MerkleAVLTree<>();
+        for (int i = 0; i < 1000; i++) {
+            local.insert(i);
+            remote.insert(999 - i);
+        }
+
+        // The hashes must survive the splits and joins.
+        local.removeRange(100, 110);
+        remote.headTruncate(5);
+        MerkleAVLTree.Diff<Integer> diff = local.diff(remote);
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), diff.getMissingRemotely());
+        assertEquals(Arrays.asList(100, 101, 102, 103, 104, 105, 106, 107, 108, 109), diff.getMissingLocally());
+    }
+
+    @Test
+    public void diffTestChannel() {
+        MerkleAVLTree<Integer> local = new MerkleAVLTree<>();
+        MerkleAVLTree<Integer> remote = new MerkleAVLTree<>();
+        TreeSet<Integer> onlyLocal = new TreeSet<>();
+        TreeSet<Integer> onlyRemote = new TreeSet<>();
+        Random rng = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            int key = rng.nextInt();
+            int side = rng.nextInt(20000);
+            if (side != 0 && !onlyRemote.contains(key)) {
+                local.insert(key);
+            }
+            if (side != 1 && !onlyLocal.contains(key)) {
+                remote.insert(key);
+            }
+            if (side == 0 && !local.contains(key)) {
+                onlyRemote.add(key);
+            } else if (side == 1 && !remote.contains(key)) {
+                onlyLocal.add(key);
+            }
+        }
+        int differences = onlyLocal.size() + onlyRemote.size();
+        assertTrue(differences > 0);
+
+        CountingChannel channel = new CountingChannel(remote);
+        MerkleAVLTree.Diff<Integer> diff = local.diff(channel);
+        assertEquals(new ArrayList<>(onlyLocal), diff.getMissingRemotely());
+        assertEquals(new ArrayList<>(onlyRemote), diff.getMissingLocally());
+
+        // Each difference costs at most one request per level of the tree, plus the final fetch.
+        assertTrue(channel.requests <= 1 + differences * (17 + 1));
+    }
+
+    @Test
+    public void diffTestCollidingHashCodes() {
+        // 0L and -1L share a hashCode, as do "Aa" and "BB".
+        MerkleAVLTree<Long> local = new MerkleAVLTree<>();
+        MerkleAVLTree<Long> remote = new MerkleAVLTree<>();
+        for (long i = 1; i <= 100; i++) {
+            local.insert(i);
+            remote.insert(i);
+        }
+        local.insert(0L);
+        remote.insert(-1L);
+        MerkleAVLTree.Diff<Long> diff = local.diff(remote);
+        assertEquals(Collections.singletonList(0L), diff.getMissingRemotely());
+        assertEquals(Collections.singletonList(-1L), diff.getMissingLocally());
+
+        MerkleAVLTree<String> localStrings = new MerkleAVLTree<>();
+        MerkleAVLTree<String> remoteStrings = new MerkleAVLTree<>();
+        localStrings.insert("Aa");
+        remoteStrings.insert("BB");
+        assertNotEquals(localStrings.getRootHash(), remoteStrings.getRootHash());
+        assertEquals(Collections.singletonList("BB"), localStrings.diff(remoteStrings).getMissingLocally());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void hashTestUnsupportedKey() {
+        new MerkleAVLTree<BigDecimal>().insert(BigDecimal.ONE);
+    }
+}
@@ -0,0 +1,136 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ShardedAVLTreeTest {
+
+    @Test
+    public void insertTestSplitPoints() {
+        ShardedAVLTree<Integer> tree = new ShardedAVLTree<>(Arrays.asList(100, 200), 4, 1000);
+        for (int i = 299; i >= 0; i--) {
+            tree.insert(i);
+        }
+        tree.insert(150);
+
+        assertEquals(3, tree.getShardCount());
+        assertEquals(300, tree.getSize());
+        assertTrue(tree.contains(0));
+        assertTrue(tree.contains(100));
+        assertTrue(tree.contains(299));
+        assertFalse(tree.contains(300));
+
+        int i = 0;
+        for (int x : tree.getInorderNodes()) {
+            assertEquals(i, x);
+            i++;
+        }
+    }
+
+    @Test
+    public void rangeTest() {
+        ShardedAVLTree<Integer> tree = new ShardedAVLTree<>(Arrays.asList(100, 200), 4, 1000);
+        for (int i = 0; i < 300; i += 2) {
+            tree.insert(i);
+        }
+
+        // Spanning all shards, ending exactly on a split point, and inside a single shard.
+        assertEquals(Arrays.asList(96, 98, 100, 102, 104), tree.getRangeNodes(95, 105));
+        assertEquals(Arrays.asList(196, 198), tree.getRangeNodes(196, 200));
+        assertEquals(Arrays.asList(150), tree.getRangeNodes(150, 151));
+        assertEquals(150, tree.getRangeNodes(-10, 1000).size());
+        assertTrue(tree.getRangeNodes(10, 10).isEmpty());
+    }
+
+    @Test
+    public void rebalanceTestSkewed() {
+        ShardedAVLTree<Integer> tree = new ShardedAVLTree<>(8, 128);
+
+        // Ascending keys keep landing on the last shard, which must keep being split.
+        for (int i = 0; i < 10000; i++) {
+            tree.insert(i);
+        }
+        assertTrue(tree.getShardCount() > 1);
+        assertTrue(tree.getShardCount() <= 8);
+        assertEquals(10000, tree.getSize());
+        assertEquals(Arrays.asList(4998, 4999, 5000), tree.getRangeNodes(4998, 5001));
+
+        int i = 0;
+        for (int x : tree.getInorderNodes()) {
+            assertEquals(i, x);
+            i++;
+        }
+    }
+
+    @Test
+    public void insertTestConcurrent() throws Exception {
+        ShardedAVLTree<Integer> tree = new ShardedAVLTree<>(16, 256);
+        int threads = 8;
+        int perThread = 20000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<TreeSet<Integer>>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Random rng = new Random(t);
+            workers.add(executor.submit(() -> {
+                TreeSet<Integer> keys = new TreeSet<>();
+                for (int i = 0; i < perThread; i++) {
+                    int key = rng.nextInt(1000000);
+                    tree.insert(key);
+                    keys.add(key);
+
+                    // Each key must be visible to its writer, even while its shard is being split.
+                    assertTrue(tree.contains(key));
+                }
+                return keys;
+            }));
+        }
+        executor.shutdown();
+
+        // Rethrows any assertion failure from a worker on the test thread.
+        List<TreeSet<Integer>> inserted = new ArrayList<>();
+        for (Future<TreeSet<Integer>> worker : workers) {
+            inserted.add(worker.get());
+        }
+
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (TreeSet<Integer> keys : inserted) {
+            expected.addAll(keys);
+        }
+        assertEquals(expected.size(), tree.getSize());
+        assertEquals(new ArrayList<>(expected), tree.getInorderNodes());
+        assertEquals(new ArrayList<>(expected.subSet(1000, 500000)), tree.getRangeNodes(1000, 500000));
+    }
+
+    @Test
+    public void scanTestDuringRebalance() throws Exception {
+        ShardedAVLTree<Integer> tree = new ShardedAVLTree<>(8, 64);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> writer = executor.submit(() -> {
+            Random rng = new Random(1);
+            for (int i = 0; i < 100000; i++) {
+                tree.insert(rng.nextInt());
+            }
+        });
+        executor.shutdown();
+
+        // Every scan sees a sorted snapshot which only grows, however often shards are replaced.
+        int previous = 0;
+        while (!writer.isDone()) {
+            List<Integer> keys = tree.getInorderNodes();
+            for (int i = 1; i < keys.size(); i++) {
+                assertTrue(keys.get(i - 1) < keys.get(i));
+            }
+            assertTrue(keys.size() >= previous);
+            previous = keys.size();
+        }
+        writer.get();
+        assertEquals(tree.getSize(), tree.getInorderNodes().size());
+    }
+}
@@ -0,0 +1,100 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TraceRecorderTest {
+
+    @Test
+    public void recordTestTree() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TraceRecorder<Integer> recorder = new TraceRecorder<>(bytes, KeyCodec.integers());
+        AVLTree<Integer> avlTree = new AVLTree<>();
+        avlTree.setTraceRecorder(recorder);
+
+        avlTree.insert(5);
+        avlTree.insert(-300);
+        avlTree.contains(7);
+        avlTree.getInorderNodes();
+        avlTree.removeRange(0, 10);
+        avlTree.headTruncate(-1000);
+        avlTree.tailTruncate(1000);
+
+        // Operations after recording stops are not traced.
+        avlTree.setTraceRecorder(null);
+        avlTree.insert(6);
+        recorder.close();
+        assertEquals(7, recorder.getOperationCount());
+
+        TraceReader<Integer> reader = new TraceReader<>(new ByteArrayInputStream(bytes.toByteArray()),
+                KeyCodec.integers());
+        List<String> operations = new ArrayList<>();
+        while (reader.next()) {
+            operations.add(reader.getOperation() + ":" + reader.getKey() + ":" + reader.getSecondKey());
+        }
+        assertEquals(Arrays.asList("1:5:null", "1:-300:null", "2:7:null", "3:null:null", "4:0:10",
+                "5:-1000:null", "6:1000:null"), operations);
+    }
+
+    @Test
+    public void recordTestCodecs() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TraceRecorder<Long> longs = new TraceRecorder<>(bytes, KeyCodec.longs());
+        long[] values = {0, 1, -1, 63, -64, 64, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long value : values) {
+            longs.recordInsert(value);
+        }
+        longs.close();
+
+        // Small keys take a single byte after the opcode.
+        assertEquals(5 + 5 * 2 + 3 + 11 + 11, bytes.size());
+        TraceReader<Long> reader = new TraceReader<>(new ByteArrayInputStream(bytes.toByteArray()), KeyCodec.longs());
+        for (long value : values) {
+            assertTrue(reader.next());
+            assertEquals(value, (long) reader.getKey());
+        }
+        assertFalse(reader.next());
+
+        bytes = new ByteArrayOutputStream();
+        TraceRecorder<String> strings = new TraceRecorder<>(bytes, KeyCodec.strings());
+        strings.recordContains("");
+        strings.recordContains("k\u00e9y \u2603");
+        strings.close();
+        TraceReader<String> stringReader = new TraceReader<>(new ByteArrayInputStream(bytes.toByteArray()),
+                KeyCodec.strings());
+        assertTrue(stringReader.next());
+        assertEquals("", stringReader.getKey());
+        assertTrue(stringReader.next());
+        assertEquals("k\u00e9y \u2603", stringReader.getKey());
+    }
+
+    @Test
+    public void recordTestLargeTrace() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TraceRecorder<Integer> recorder = new TraceRecorder<>(bytes, KeyCodec.integers());
+        for (int i = 0; i < 200000; i++) {
+            recorder.recordInsert(i * 31);
+        }
+        recorder.close();
+
+        // The trace spans several buffers on both sides.
+        TraceReader<Integer> reader = new TraceReader<>(new ByteArrayInputStream(bytes.toByteArray()),
+                KeyCodec.integers());
+        int i = 0;
+        while (reader.next()) {
+            assertEquals(TraceRecorder.INSERT, reader.getOperation());
+            assertEquals(i * 31, (int) reader.getKey());
+            i++;
+        }
+        assertEquals(200000, i);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void readTestBadHeader() {
+        new TraceReader<>(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5}), KeyCodec.integers());
+    }
+}